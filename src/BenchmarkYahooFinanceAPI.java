@@ -0,0 +1,682 @@
+/*
+ * Copyright (C) 2012 Jim Merrell - JDRL Software
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import com.jdrlsoftware.yahoofinance.YFApi;
+import com.jdrlsoftware.yahoofinance.YFExecutors;
+import com.jdrlsoftware.yahoofinance.YFField;
+import com.jdrlsoftware.yahoofinance.YFFixtureTransport;
+import com.jdrlsoftware.yahoofinance.YFHistory;
+import com.jdrlsoftware.yahoofinance.YFHistoryApi;
+import com.jdrlsoftware.yahoofinance.YFHistoryInterval;
+import com.jdrlsoftware.yahoofinance.YFHttpTransport;
+import com.jdrlsoftware.yahoofinance.YFQuote;
+import com.jdrlsoftware.yahoofinance.YFQuoteDecoder;
+import com.jdrlsoftware.yahoofinance.YFQuoteEncoder;
+import com.jdrlsoftware.yahoofinance.YFQuoteListener;
+import com.jdrlsoftware.yahoofinance.YFQuoteView;
+import com.jdrlsoftware.yahoofinance.YFTokenizer;
+import com.jdrlsoftware.yahoofinance.YFTransport;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.CharArrayReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Offline micro benchmarks for the api.  Each benchmark runs against
+ * generated csv data, so no connection to Yahoo! Finance is needed.  The
+ * benchmarks cover tokenizing, loading quotes, field lookup, the binary
+ * quote codec against csv text, URL building and end-to-end retrieval, both
+ * in process and through a local HTTP server.  For every benchmark the
+ * average time, the bytes allocated per operation, the allocation rate and
+ * the garbage collections during the measured rounds are printed.
+ * Allocation is counted for the benchmark thread only.
+ * <p>
+ * Before measuring, <code>YFTokenizer</code> is checked against the legacy
+ * tokenizing, and against the lines where the two are documented to differ.
+ * The latest quotes of a <code>YFApi</code> are checked to keep the fields
+ * that a later call for fewer fields does not fetch.
+ * <p>
+ * Run with the symbol count as the optional argument, for example
+ * <code>java -cp classes BenchmarkYahooFinanceAPI 6000</code>.
+ *
+ * @author Jim Merrell - <www.jmerrell.com>
+ */
+public class BenchmarkYahooFinanceAPI {
+
+    private static final int WARMUP_ROUNDS = 5;
+
+    /**
+     * Minimum warm up time, so that short operations are compiled before
+     * they are measured
+     */
+    private static final long WARMUP_MILLIS = 1000;
+    private static final int MEASURED_ROUNDS = 10;
+
+    /**
+     * Delay of every response in the concurrent fetch benchmark.
+     */
+    private static final long FETCH_LATENCY_MILLIS = 20;
+
+    /**
+     * Platform threads used for the concurrent fetch benchmark when not
+     * running on virtual threads.
+     */
+    private static final int PLATFORM_THREADS = 200;
+
+    private static final YFField[] BENCHMARK_FIELDS = new YFField[]{
+        YFField.SYMBOL,
+        YFField.PREVIOUS_CLOSE,
+        YFField.LAST_TRADE,
+        YFField.LAST_TRADE_DATE,
+        YFField.LAST_TRADE_TIME,
+        YFField.OPEN,
+        YFField.DAYS_HIGH,
+        YFField.DAYS_LOW,
+        YFField.VOLUME,
+        YFField.NAME};
+
+    /**
+     * A benchmarked operation, run once per round.
+     */
+    private interface Operation {
+
+        /**
+         * @return A value derived from the work done, to keep the JIT from
+         * removing it
+         */
+        long run() throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int symbolCount = args.length > 0 ? Integer.parseInt(args[0]) : 6000;
+        final String[] lines = generateCsvLines(symbolCount);
+
+        System.out.println("BenchmarkYahooFinanceAPI, " + symbolCount + " csv lines per operation");
+        checkTokenizer(lines);
+        checkLatestQuotes();
+
+        benchmark("legacy parseTokens", new Operation() {
+            @Override
+            public long run() throws Exception {
+                long tokens = 0;
+                for (String line : lines) {
+                    tokens += legacyParseTokens(line).size();
+                }
+                return tokens;
+            }
+        });
+
+        final YFTokenizer tokenizer = new YFTokenizer();
+        benchmark("YFTokenizer boundaries only", new Operation() {
+            @Override
+            public long run() throws Exception {
+                long tokens = 0;
+                for (String line : lines) {
+                    tokens += tokenizer.tokenize(line);
+                }
+                return tokens;
+            }
+        });
+
+        benchmark("YFTokenizer materialize all", new Operation() {
+            @Override
+            public long run() throws Exception {
+                long length = 0;
+                for (String line : lines) {
+                    int count = tokenizer.tokenize(line);
+                    for (int i = 0; i < count; i++) {
+                        length += tokenizer.getToken(i).length();
+                    }
+                }
+                return length;
+            }
+        });
+
+        // one canned response holding every line, whatever the request
+        final byte[] response = joinLines(lines);
+        YFTransport cannedTransport = new YFTransport() {
+            @Override
+            public InputStream open(URL aURL) {
+                return new ByteArrayInputStream(response);
+            }
+        };
+        final String[] symbols = new String[lines.length];
+        for (int i = 0; i < symbols.length; i++) {
+            symbols[i] = symbol(i);
+        }
+
+        final YFApi cannedApi = new YFApi(YFApi.DEFAULT_BASE_URL, cannedTransport);
+        benchmark("streamQuotes load only", new Operation() {
+            @Override
+            public long run() throws Exception {
+                final long[] count = new long[1];
+                cannedApi.streamQuotes(symbols, BENCHMARK_FIELDS, new YFQuoteListener() {
+                    @Override
+                    public boolean quoteReceived(YFQuote quote) {
+                        count[0]++;
+                        return true;
+                    }
+                });
+                return count[0];
+            }
+        });
+
+        benchmark("streamQuotes load and read 3 fields", new Operation() {
+            @Override
+            public long run() throws Exception {
+                final long[] length = new long[1];
+                cannedApi.streamQuotes(symbols, BENCHMARK_FIELDS, new YFQuoteListener() {
+                    @Override
+                    public boolean quoteReceived(YFQuote quote) {
+                        length[0] += quote.getDataItemValue(YFField.LAST_TRADE).length()
+                                + quote.getDataItemValue(YFField.VOLUME).length()
+                                + quote.getDataItemValue(YFField.NAME).length();
+                        return true;
+                    }
+                });
+                return length[0];
+            }
+        });
+
+        benchmark("retrieveSnapshot", new Operation() {
+            @Override
+            public long run() throws Exception {
+                return cannedApi.retrieveSnapshot(symbols, BENCHMARK_FIELDS).size();
+            }
+        });
+
+        final Map<String, YFQuote> quotes = cannedApi.retrieveQuotes(symbols, BENCHMARK_FIELDS);
+        benchmark("YFApi.getQuote all symbols", new Operation() {
+            @Override
+            public long run() {
+                long found = 0;
+                for (String symbol : symbols) {
+                    if (cannedApi.getQuote(symbol) != null) {
+                        found++;
+                    }
+                }
+                return found;
+            }
+        });
+
+        benchmark("YFQuote.getDouble 3 fields", new Operation() {
+            @Override
+            public long run() {
+                double sum = 0;
+                for (YFQuote quote : quotes.values()) {
+                    sum += quote.getDouble(YFField.LAST_TRADE) + quote.getDouble(YFField.PREVIOUS_CLOSE)
+                            + quote.getLong(YFField.VOLUME);
+                }
+                return (long) sum;
+            }
+        });
+
+        // the binary codec against the csv text the quotes were loaded from;
+        // after the first message the symbols are already known
+        final List<YFQuote> quoteList = new ArrayList<YFQuote>(quotes.values());
+        final YFQuoteEncoder encoder = new YFQuoteEncoder(BENCHMARK_FIELDS);
+        final byte[] firstMessage = toBytes(encoder.encode(quoteList));
+        final byte[] message = toBytes(encoder.encode(quoteList));
+        final YFQuoteDecoder decoder = new YFQuoteDecoder();
+        decoder.decode(ByteBuffer.wrap(firstMessage));
+        System.out.println(String.format("%-40s %12d bytes first %10d bytes later %10d bytes csv", "message size",
+                firstMessage.length, message.length, response.length));
+        benchmark("csv text encode", new Operation() {
+            @Override
+            public long run() {
+                StringBuilder sb = new StringBuilder();
+                for (YFQuote quote : quoteList) {
+                    for (int i = 0; i < BENCHMARK_FIELDS.length; i++) {
+                        if (i > 0) {
+                            sb.append(',');
+                        }
+                        sb.append(quote.getDataItemValue(BENCHMARK_FIELDS[i]));
+                    }
+                    sb.append("\r\n");
+                }
+                return sb.toString().getBytes(StandardCharsets.UTF_8).length;
+            }
+        });
+
+        benchmark("YFQuoteEncoder encode", new Operation() {
+            @Override
+            public long run() {
+                return encoder.encode(quoteList).remaining();
+            }
+        });
+
+        benchmark("YFQuoteView decode and read 3 fields", new Operation() {
+            @Override
+            public long run() {
+                YFQuoteView view = decoder.decode(ByteBuffer.wrap(message));
+                double sum = 0;
+                while (view.next()) {
+                    sum += view.getDouble(YFField.LAST_TRADE) + view.getDouble(YFField.PREVIOUS_CLOSE)
+                            + view.getLong(YFField.VOLUME);
+                }
+                return (long) sum;
+            }
+        });
+
+        benchmark("YFQuoteDecoder decode to quotes", new Operation() {
+            @Override
+            public long run() {
+                return decoder.decodeQuotes(ByteBuffer.wrap(message)).size();
+            }
+        });
+
+        // an empty response leaves the request overhead: URL building,
+        // reader creation and batching
+        YFTransport emptyTransport = new YFTransport() {
+            @Override
+            public InputStream open(URL aURL) {
+                return new ByteArrayInputStream(new byte[0]);
+            }
+        };
+        final YFApi emptyApi = new YFApi(YFApi.DEFAULT_BASE_URL, emptyTransport);
+        emptyApi.setBatchSize(1);
+        emptyApi.setMaxConnections(1);
+        final String[] requestSymbols = new String[Math.min(symbols.length, 200)];
+        System.arraycopy(symbols, 0, requestSymbols, 0, requestSymbols.length);
+        benchmark("build " + requestSymbols.length + " request URLs", new Operation() {
+            @Override
+            public long run() throws Exception {
+                return emptyApi.retrieveQuotes(requestSymbols, BENCHMARK_FIELDS).size();
+            }
+        });
+
+        final YFFixtureTransport fixtureTransport = newFixtureTransport(lines);
+        final YFApi fixtureApi = new YFApi(YFApi.DEFAULT_BASE_URL, fixtureTransport);
+        benchmark("retrieveQuotes fixture transport", new Operation() {
+            @Override
+            public long run() throws Exception {
+                return fixtureApi.retrieveQuotes(symbols, BENCHMARK_FIELDS).size();
+            }
+        });
+
+        final String[] historySymbols = new String[20];
+        System.arraycopy(symbols, 0, historySymbols, 0, historySymbols.length);
+        final LocalDate historyFrom = LocalDate.of(2002, 1, 1);
+        final LocalDate historyTo = LocalDate.of(2011, 12, 31);
+        final YFHistoryApi historyApi = new YFHistoryApi(YFHistoryApi.DEFAULT_BASE_URL,
+                newHistoryTransport(historySymbols, historyFrom, historyTo));
+        benchmark("retrieveHistory " + historySymbols.length + " symbols 10 years", new Operation() {
+            @Override
+            public long run() throws Exception {
+                long rows = 0;
+                for (YFHistory history : historyApi.retrieveHistory(historySymbols, historyFrom, historyTo,
+                        YFHistoryInterval.DAILY).values()) {
+                    rows += history.size();
+                }
+                return rows;
+            }
+        });
+
+        HttpServer server = startServer(fixtureTransport);
+        try {
+            final YFApi httpApi = new YFApi("http://localhost:" + server.getAddress().getPort() + "/d/",
+                    new YFHttpTransport());
+            httpApi.setBatchSize(200);
+            benchmark("retrieveQuotes local HTTP server", new Operation() {
+                @Override
+                public long run() throws Exception {
+                    return httpApi.retrieveQuotes(symbols, BENCHMARK_FIELDS).size();
+                }
+            });
+        } finally {
+            server.stop(0);
+        }
+
+        benchmarkConcurrentFetches(lines, new int[]{10, 100, 1000, 10000});
+    }
+
+    /**
+     * Returns a transport serving generated daily history of each weekday
+     * from <code>from</code> to <code>to</code>.
+     */
+    static YFFixtureTransport newHistoryTransport(String[] symbols, LocalDate from, LocalDate to) throws IOException {
+        YFFixtureTransport transport = new YFFixtureTransport();
+        Random random = new Random(7);
+        for (String symbol : symbols) {
+            StringBuilder sb = new StringBuilder("Date,Open,High,Low,Close,Volume,Adj Close\n");
+            double close = 20 + random.nextInt(200);
+            for (LocalDate day = to; !day.isBefore(from); day = day.minusDays(1)) {
+                if (day.getDayOfWeek().getValue() < 6) {
+                    close = Math.max(1, Math.round((close + random.nextGaussian()) * 100) / 100.0);
+                    sb.append(day).append(',').append(close).append(',').append(close + 0.5).append(',')
+                            .append(close - 0.5).append(',').append(close).append(',')
+                            .append(100000 + random.nextInt(900000)).append(',').append(close).append('\n');
+                }
+            }
+            transport.loadHistory(symbol, YFHistoryInterval.DAILY, new StringReader(sb.toString()));
+        }
+        return transport;
+    }
+
+    /**
+     * Starts a local HTTP server answering every request with the
+     * transport's response to the request URL.
+     */
+    static HttpServer startServer(final YFTransport transport) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                URL aURL = new URL("http://localhost" + exchange.getRequestURI());
+                ByteArrayOutputStream body = new ByteArrayOutputStream();
+                InputStream in = transport.open(aURL);
+                byte[] buffer = new byte[8192];
+                int n;
+                while ((n = in.read(buffer)) > 0) {
+                    body.write(buffer, 0, n);
+                }
+                exchange.sendResponseHeaders(200, body.size());
+                OutputStream out = exchange.getResponseBody();
+                body.writeTo(out);
+                out.close();
+            }
+        });
+        server.setExecutor(YFExecutors.newFixedThreadPool(4, "benchmark-server"));
+        server.start();
+        return server;
+    }
+
+    static byte[] toBytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    static byte[] joinLines(String[] lines) {
+        StringBuilder sb = new StringBuilder();
+        for (String line : lines) {
+            sb.append(line).append("\r\n");
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Runs increasing numbers of small concurrent fetches against a stand-in
+     * transport that adds a fixed latency to each response, once on platform
+     * threads and, if supported, once on virtual threads.
+     */
+    static void benchmarkConcurrentFetches(String[] lines, int[] taskCounts) throws Exception {
+        YFFixtureTransport transport = newFixtureTransport(lines);
+        transport.setLatency(FETCH_LATENCY_MILLIS);
+        final String[] symbols = transport.getSymbols().toArray(new String[0]);
+
+        System.out.println("\nconcurrent fetches, 5 symbols each, " + FETCH_LATENCY_MILLIS + " ms latency");
+        for (boolean virtualThreads : new boolean[]{false, true}) {
+            if (virtualThreads && !YFExecutors.isVirtualThreadsSupported()) {
+                System.out.println("virtual threads not supported by this JVM");
+                continue;
+            }
+            for (int tasks : taskCounts) {
+                final YFApi yfApi = new YFApi(YFApi.DEFAULT_BASE_URL, transport);
+                yfApi.setMaxConnections(tasks);
+                ExecutorService executor = virtualThreads
+                        ? YFExecutors.newVirtualThreadExecutor("benchmark")
+                        : YFExecutors.newFixedThreadPool(Math.min(tasks, PLATFORM_THREADS), "benchmark");
+                List<Future<Integer>> futures = new ArrayList<Future<Integer>>(tasks);
+                long start = System.nanoTime();
+                for (int i = 0; i < tasks; i++) {
+                    final String[] group = new String[5];
+                    for (int j = 0; j < group.length; j++) {
+                        group[j] = symbols[(i * group.length + j) % symbols.length];
+                    }
+                    futures.add(executor.submit(new Callable<Integer>() {
+                        @Override
+                        public Integer call() throws Exception {
+                            return yfApi.retrieveQuotes(group, BENCHMARK_FIELDS).size();
+                        }
+                    }));
+                }
+                long quotes = 0;
+                for (Future<Integer> future : futures) {
+                    quotes += future.get();
+                }
+                long elapsed = System.nanoTime() - start;
+                executor.shutdown();
+                System.out.println(String.format("%-16s %6d tasks %10.1f ms %12.0f fetches/s   (%d)",
+                        virtualThreads ? "virtual threads" : "platform threads", tasks,
+                        elapsed / 1e6, tasks / (elapsed / 1e9), quotes));
+            }
+        }
+    }
+
+    /**
+     * @return A stand-in transport serving the given csv lines
+     */
+    static YFFixtureTransport newFixtureTransport(String[] lines) throws IOException {
+        YFFixtureTransport transport = new YFFixtureTransport();
+        for (String line : lines) {
+            transport.addQuote(BENCHMARK_FIELDS, line);
+        }
+        return transport;
+    }
+
+    /**
+     * Generates csv lines like those returned for the default field options
+     * plus a name, including embedded commas and N/A values.  The columns
+     * are those of <code>BENCHMARK_FIELDS</code>.
+     */
+    static String[] generateCsvLines(int count) {
+        Random random = new Random(42);
+        String[] lines = new String[count];
+        for (int i = 0; i < count; i++) {
+            double close = 10 + random.nextInt(50000) / 100.0;
+            double last = close + (random.nextInt(2000) - 1000) / 100.0;
+            StringBuilder sb = new StringBuilder();
+            sb.append('"').append(symbol(i)).append("\",");
+            sb.append(close).append(',').append(last).append(',');
+            sb.append("\"6/14/2013\",\"4:00pm\",");
+            if (i % 10 == 0) {
+                sb.append("N/A,N/A,N/A,");
+            } else {
+                sb.append(close).append(',').append(Math.max(close, last)).append(',').append(Math.min(close, last)).append(',');
+            }
+            sb.append(random.nextInt(10000000)).append(',');
+            sb.append('"').append(i % 3 == 0 ? "Company " + i + ", Inc." : "Company " + i).append('"');
+            lines[i] = sb.toString();
+        }
+        return lines;
+    }
+
+    static String symbol(int i) {
+        StringBuilder sb = new StringBuilder();
+        do {
+            sb.append((char) ('A' + i % 26));
+            i /= 26;
+        } while (i > 0);
+        return sb.toString();
+    }
+
+    static void benchmark(String name, Operation operation) throws Exception {
+        long blackhole = 0;
+        long warmupEnd = System.nanoTime() + WARMUP_MILLIS * 1000000;
+        for (int i = 0; i < WARMUP_ROUNDS || System.nanoTime() < warmupEnd; i++) {
+            blackhole += operation.run();
+        }
+        long collectionsBefore = collectionCount();
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            blackhole += operation.run();
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = allocatedBytes() - allocatedBefore;
+        long collections = collectionCount() - collectionsBefore;
+        System.out.println(String.format("%-40s %12.3f ms/op %14d bytes/op %10.1f MB/s %4d gc   (%d)",
+                name, elapsed / 1e6 / MEASURED_ROUNDS, allocated / MEASURED_ROUNDS,
+                allocated / 1e6 / (elapsed / 1e9), collections, blackhole));
+    }
+
+    /**
+     * @return The number of garbage collections so far
+     */
+    private static long collectionCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, bean.getCollectionCount());
+        }
+        return count;
+    }
+
+    /**
+     * @return Bytes allocated by the current thread, or 0 if the JVM does
+     * not support allocation counting
+     */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    /**
+     * Checks that <code>YFTokenizer</code> splits the generated lines like
+     * the legacy tokenizing, and splits the lines where the two differ as
+     * documented in <code>YFTokenizer</code>.
+     */
+    private static void checkTokenizer(String[] lines) throws IOException {
+        YFTokenizer tokenizer = new YFTokenizer();
+        for (String line : lines) {
+            checkTokens(tokenizer, line, legacyParseTokens(line));
+        }
+        String[][] cases = {
+            // line, then the tokens expected
+            {"\"AAPL\",,1.5", "AAPL", "N/A", "1.5"},
+            {",\"AAPL\",1.5", "N/A", "AAPL", "1.5"},
+            {"\"AAPL\",,,1.5", "AAPL", "N/A", "N/A", "1.5"},
+            {"\"AAPL\",1.5,", "AAPL", "1.5", "N/A"},
+            {"\"AAPL\"x,1.5", "AAPL", "1.5"},
+            {"\"\",\"Apple, Inc.\"", "N/A", "Apple, Inc."}};
+        for (String[] test : cases) {
+            List<String> expected = new ArrayList<String>();
+            for (int i = 1; i < test.length; i++) {
+                expected.add(test[i]);
+            }
+            checkTokens(tokenizer, test[0], expected);
+        }
+        System.out.println("YFTokenizer checks passed");
+    }
+
+    /**
+     * Checks that a call fetching only some fields updates those fields of
+     * the latest quote and keeps the others, as a <code>YFQuoteCache</code>
+     * refresh does.
+     */
+    private static void checkLatestQuotes() throws Exception {
+        YFField[] allFields = {YFField.SYMBOL, YFField.NAME, YFField.LAST_TRADE, YFField.VOLUME};
+        YFField[] priceFields = {YFField.SYMBOL, YFField.LAST_TRADE};
+        YFFixtureTransport transport = new YFFixtureTransport();
+        transport.addQuote(allFields, "\"IBM\",\"International Business Machines\",209.19,12345");
+        YFApi api = new YFApi(YFApi.DEFAULT_BASE_URL, transport);
+        api.retrieveQuotes(new String[] {"IBM"}, allFields);
+        transport.addQuote(priceFields, "\"IBM\",210.5");
+        api.retrieveQuotes(new String[] {"IBM"}, priceFields);
+        YFQuote quote = api.getQuote("IBM");
+        if (!"210.5".equals(quote.getDataItemValue(YFField.LAST_TRADE))
+                || !"International Business Machines".equals(quote.getDataItemValue(YFField.NAME))
+                || !"12345".equals(quote.getDataItemValue(YFField.VOLUME))) {
+            throw new IllegalStateException("YFApi latest quote after a LAST_TRADE refresh: " + quote.printInfo());
+        }
+        System.out.println("Latest quote checks passed");
+    }
+
+    private static void checkTokens(YFTokenizer tokenizer, String line, List<String> expected) throws IOException {
+        List<String> tokens = new ArrayList<String>();
+        int count = tokenizer.tokenize(line);
+        for (int i = 0; i < count; i++) {
+            tokens.add(tokenizer.getToken(i));
+        }
+        if (!tokens.equals(expected)) {
+            throw new IllegalStateException("YFTokenizer split " + line + " into " + tokens + ", expected " + expected);
+        }
+    }
+
+    /**
+     * The tokenizer YFApi used before YFTokenizer, kept as a baseline.
+     */
+    private static ArrayList<String> legacyParseTokens(String quoteLine) throws IOException {
+        ArrayList<String> tokenList = new ArrayList<String>();
+        CharArrayReader charReader = new CharArrayReader(quoteLine.toCharArray());
+        int c = charReader.read();
+        if (c == -1) {
+            return tokenList;
+        }
+        StringBuffer sb;
+        while (c != -1) {
+            sb = new StringBuffer();
+            if (c == ',') {
+                c = charReader.read();
+                if (c == ',' || c == -1) {
+                    sb.append("N/A");
+                    tokenList.add(sb.toString());
+                    c = charReader.read();
+                }
+                continue;
+            }
+            if (c == '"') {
+                c = charReader.read();
+                if (c == '"') {
+                    tokenList.add("N/A");
+                    c = charReader.read();
+                    continue;
+                }
+                while (c != '"') {
+                    if (c == -1) {
+                        throw new IOException("Missing end quote!");
+                    }
+                    sb.append((char) c);
+                    c = charReader.read();
+                }
+                tokenList.add(sb.toString());
+                c = charReader.read();
+                continue;
+            }
+            while (c != ',' && c != -1) {
+                sb.append((char) c);
+                c = charReader.read();
+            }
+            tokenList.add(sb.toString());
+        }
+        charReader.close();
+        return tokenList;
+    }
+}
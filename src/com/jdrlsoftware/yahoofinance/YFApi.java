@@ -17,19 +17,58 @@
 
 package com.jdrlsoftware.yahoofinance;
 
-import java.io.CharArrayReader;
 import java.io.IOException;
-import java.net.MalformedURLException;
-import java.net.URL;
+import java.nio.charset.Charset;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
+ * Retrieves quote information from Yahoo! Finance.
+ * <p>
+ * A <code>YFApi</code> can be shared between threads.  Each call builds its
+ * own result and keeps no state of its own while fetching; the quotes of
+ * <code>retrieveQuotes</code> calls are then published to a
+ * <code>YFSnapshotStore</code> as the latest quote of each symbol, which
+ * {@link #getQuote(String)} and {@link #printQuoteInfo()} read without
+ * locking.  A call asking for fewer fields than the latest quote holds
+ * updates only those fields.
+ * <p>
+ * Failures to retrieve quotes are thrown as a <code>YFException</code>
+ * where the cause is known: a <code>YFTransientException</code> for failures
+ * worth retrying later, a <code>YFPermanentException</code>, such as a
+ * <code>YFFieldException</code>, for requests that will keep failing.  A
+ * <code>YFResilientTransport</code> retries, rate limits and serves stale
+ * data on behalf of the api.
+ * <p>
+ * The field options of each call are planned by a <code>YFFieldPlan</code>:
+ * duplicates are dropped, SYMBOL is always requested, and fields that can
+ * be computed from other requested fields are not fetched.  The request of
+ * each group of symbols and plan is built once, with its symbols URL
+ * encoded, and reused by later calls asking for the same quotes.
  *
  * @author Jim Merrell - <www.jmerrell.com>
  */
 public class YFApi {
 
-    private final String baseURL = "http://finance.yahoo.com/d/?s=";
+    /**
+     * Location of the Yahoo! Finance csv quote service.
+     */
+    public static final String DEFAULT_BASE_URL = "http://finance.yahoo.com/d/";
+
+    /**
+     * Default number of simultaneous connections used when fetching batches.
+     */
+    public static final int DEFAULT_MAX_CONNECTIONS = 4;
+
+    private final String baseURL;
     private final String delimChar = ",";
     
     /**
@@ -48,25 +87,223 @@ public class YFApi {
         YFField.VOLUME};
 
     /**
-     * The list of ticker symbols formatted for Yahoo! Finance
+     * The request parameters of the most recent call
+     */
+    private volatile LastRequest lastRequest = LastRequest.EMPTY;
+
+    /**
+     * The latest quote of each symbol retrieved
+     */
+    private final YFSnapshotStore snapshotStore = new YFSnapshotStore();
+
+    /**
+     * Maximum number of symbols sent in a single request, 0 = no limit
+     */
+    private volatile int batchSize = 0;
+
+    /**
+     * Maximum number of requests open at the same time, across all calls
+     */
+    private volatile int maxConnections = DEFAULT_MAX_CONNECTIONS;
+
+    /**
+     * One permit per connection allowed, held while a request is read
      */
-    private String symbolParamString = "";
+    private volatile Semaphore connectionPermits = new Semaphore(DEFAULT_MAX_CONNECTIONS);
 
     /**
-     * The list of field options formatted for Yahoo! Finance
+     * Run batches on virtual threads instead of a pool of platform threads
      */
-    private String fieldOptionParamString = "";
+    private volatile boolean virtualThreads;
 
     /**
-     * Holds the quote info returned from Yahoo! Finance in <code>YFQuote</code>
-     * objects
+     * Fetches the csv data for each request
      */
-    private Map<String, YFQuote> quoteMap;
+    private volatile YFTransport transport = YFReader.getDefaultTransport();
+
+    /**
+     * Records every quote loaded, null if not journaling
+     */
+    private volatile YFJournalWriter journal;
+
+    /**
+     * Receives the measurements of each request, null if not measuring
+     */
+    private volatile YFMetricsListener metricsListener;
+
+    /**
+     * Charset the csv data is decoded with
+     */
+    private volatile Charset charset = YFReader.DEFAULT_CHARSET;
+
+    /**
+     * The requests already built, by symbol group and field plan
+     */
+    private final YFRequestTemplate.Cache requestTemplates;
+
+    /**
+     * The request parameters of one call, formatted for Yahoo! Finance only
+     * when printed.
+     */
+    private static class LastRequest {
+
+        static final LastRequest EMPTY = new LastRequest(new String[0], null);
+
+        final String[] symbols;
+        final YFFieldPlan plan;
+
+        LastRequest(String[] symbols, YFFieldPlan plan) {
+            this.symbols = symbols;
+            this.plan = plan;
+        }
+    }
 
     /**
      * Class constructor.
      */
     public YFApi() {
+        this(DEFAULT_BASE_URL);
+    }
+
+    /**
+     * Class constructor specifying the location of the csv quote service, for
+     * example a local server that serves canned csv data.
+     *
+     * @param baseURL The service URL the query string is appended to
+     */
+    public YFApi(String baseURL) {
+        if (baseURL == null || baseURL.length() == 0) {
+            throw new IllegalArgumentException("YFApi base URL cannot be empty/null");
+        }
+        this.baseURL = baseURL;
+        this.requestTemplates = new YFRequestTemplate.Cache(baseURL);
+    }
+
+    /**
+     * Class constructor specifying the location of the csv quote service and
+     * the transport used to fetch it.
+     *
+     * @param baseURL The service URL the query string is appended to
+     * @param transport The transport used to fetch the csv data
+     */
+    public YFApi(String baseURL, YFTransport transport) {
+        this(baseURL);
+        setTransport(transport);
+    }
+
+    /**
+     * Sets the transport used to fetch the csv data, for example a
+     * <code>YFHttpTransport</code> with custom timeouts or a
+     * <code>YFFixtureTransport</code> serving recorded data.
+     */
+    public void setTransport(YFTransport transport) {
+        if (transport == null) {
+            throw new IllegalArgumentException("YFApi transport cannot be null");
+        }
+        this.transport = transport;
+    }
+
+    public YFTransport getTransport() {
+        return transport;
+    }
+
+    /**
+     * Sets a journal that every quote loaded by <code>retrieveQuotes</code>,
+     * <code>retrieveQuoteResult</code>, <code>streamQuotes</code> and
+     * <code>retrieveSnapshot</code> is appended to, with the time of the
+     * request.  A quote that cannot be written is logged and still returned.
+     *
+     * @param journal The journal, or null to stop journaling
+     */
+    public void setJournal(YFJournalWriter journal) {
+        this.journal = journal;
+    }
+
+    public YFJournalWriter getJournal() {
+        return journal;
+    }
+
+    /**
+     * Sets a listener that receives the timings of each request stage and
+     * counts of the bytes read, lines parsed, token mismatches and dropped
+     * symbols, for example a <code>YFMetrics</code>.
+     *
+     * @param metricsListener The listener, or null to stop measuring
+     */
+    public void setMetricsListener(YFMetricsListener metricsListener) {
+        this.metricsListener = metricsListener;
+    }
+
+    public YFMetricsListener getMetricsListener() {
+        return metricsListener;
+    }
+
+    /**
+     * Sets the charset the csv data is decoded with, UTF-8 by default.  Only
+     * lines holding characters outside ASCII are decoded; the charset must
+     * encode ASCII as single bytes.
+     */
+    public void setCharset(Charset charset) {
+        YFReader.checkCharset(charset);
+        this.charset = charset;
+    }
+
+    public Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * Splits requests into batches of at most <code>batchSize</code> symbols.
+     * The batches are fetched concurrently and merged into one result. A
+     * value of 0 sends all symbols in a single request.
+     *
+     * @param batchSize Maximum number of symbols per request
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 0) {
+            throw new IllegalArgumentException("YFApi batch size cannot be negative");
+        }
+        this.batchSize = batchSize;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Sets the maximum number of requests open at the same time.  The limit
+     * is shared by all calls made on this <code>YFApi</code>; requests beyond
+     * it wait for a connection to be released.
+     *
+     * @param maxConnections Maximum number of simultaneous connections
+     */
+    public void setMaxConnections(int maxConnections) {
+        if (maxConnections < 1) {
+            throw new IllegalArgumentException("YFApi max connections must be at least 1");
+        }
+        this.maxConnections = maxConnections;
+        this.connectionPermits = new Semaphore(maxConnections);
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * Runs the batches of a request on virtual threads, one per batch, so
+     * that waiting on the network costs no platform thread.  The number of
+     * batches fetched at once is still limited by <code>maxConnections</code>.
+     * Has no effect when the JVM does not support virtual threads.
+     *
+     * @param virtualThreads true to use virtual threads
+     * @see YFExecutors#isVirtualThreadsSupported()
+     */
+    public void setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads && YFExecutors.isVirtualThreadsSupported();
     }
 
     /**
@@ -85,7 +322,10 @@ public class YFApi {
      *
      * @param tickerSymbols Ticker symbols as defined by Yahoo! Finance
      * @param fieldOptions The fields that will be retrieved from Yahoo! Finance
-     * @return The map of <code>YFQuote</code> objects.
+     * @return The map of <code>YFQuote</code> objects returned by this call,
+     * which cannot be modified
+     * @throws YFPartialResultException if some batches failed, with the
+     * quotes of the others
      * @throws Exception
      */
     public Map<String, YFQuote> retrieveQuotes(String[] tickerSymbols, YFField[] fieldOptions) throws Exception {
@@ -98,131 +338,565 @@ public class YFApi {
             throw new IllegalArgumentException("Yahoo Finance field options cannot be empty/null");
         }
 
-        setSymbolParamString(tickerSymbols);
-        setFieldOptionParamString(fieldOptions);
+        YFFieldPlan plan = YFFieldPlan.getPlan(fieldOptions);
+        final Map<String, YFQuote> quotes = new HashMap<String, YFQuote>();
+        try {
+            streamQuotes(tickerSymbols, plan, new YFQuoteListener() {
+                @Override
+                public boolean quoteReceived(YFQuote quote) {
+                    quotes.put(quote.getId(), quote);
+                    return true;
+                }
+            });
+        } catch (YFPartialResultException e) {
+            publish(tickerSymbols, plan, quotes);
+            e.setQuotes(quotes);
+            throw e;
+        }
+        publish(tickerSymbols, plan, quotes);
+        return Collections.unmodifiableMap(quotes);
+    }
+
+    /**
+     * Retrieves the quote information for the given list of ticker symbols,
+     * tolerating bad rows.  A csv line that cannot be loaded, such as one
+     * with a missing end quote or the wrong number of tokens, is recorded
+     * as an error instead of failing the call, as is a failed batch, and
+     * every other quote is kept.  The symbols of the failed rows are then
+     * requested once more in a single follow-up request.  The quotes are
+     * published as the latest quotes, like <code>retrieveQuotes</code>.
+     *
+     * @param tickerSymbols Ticker symbols as defined by Yahoo! Finance
+     * @param fieldOptions The fields that will be retrieved from Yahoo! Finance
+     * @return The quotes loaded and the errors of the rows that were not
+     * @throws Exception if a request fails as a whole
+     */
+    public YFQuoteResult retrieveQuoteResult(String[] tickerSymbols, YFField[] fieldOptions) throws Exception {
+
+        if (tickerSymbols == null || tickerSymbols.length == 0) {
+            throw new IllegalArgumentException("Yahoo Finance ticker symbols cannot be empty/null");
+        }
 
-        YFReader yfReader = new YFReader(buildURL());
-        String csvDataLine;
+        if (fieldOptions == null || fieldOptions.length == 0) {
+            throw new IllegalArgumentException("Yahoo Finance field options cannot be empty/null");
+        }
 
-        // parse/load the csv data from Yahoo! Finance
-        while ((csvDataLine = yfReader.readLine()) != null) {
-            loadQuoteDataMap(csvDataLine, fieldOptions);
+        YFFieldPlan plan = YFFieldPlan.getPlan(fieldOptions);
+        Map<String, YFQuote> quotes = new HashMap<String, YFQuote>();
+        List<YFRowError> errors = new ArrayList<YFRowError>();
+        Set<String> failed = new LinkedHashSet<String>();
+        fetchTolerant(tickerSymbols, plan, false, quotes, errors, failed);
+
+        Set<String> failedSymbols = new LinkedHashSet<String>();
+        if (!failed.isEmpty()) {
+            if (failed.contains(null)) {
+                // a row whose symbol is unknown, so retry every symbol missing
+                failed.clear();
+                Collections.addAll(failed, tickerSymbols);
+            }
+            failed.removeAll(quotes.keySet());
+            if (!failed.isEmpty()) {
+                String[] retrySymbols = failed.toArray(new String[failed.size()]);
+                Set<String> failedAgain = new LinkedHashSet<String>();
+                try {
+                    fetchTolerant(retrySymbols, plan, true, quotes, errors, failedAgain);
+                } catch (Exception e) {
+                    errors.add(new YFRowError(null, null, e, true));
+                }
+                for (String symbol : retrySymbols) {
+                    if (!quotes.containsKey(symbol)) {
+                        failedSymbols.add(symbol);
+                    }
+                }
+            }
         }
 
-        yfReader.close();
-        return getQuoteMap();
+        publish(tickerSymbols, plan, quotes);
+        return new YFQuoteResult(quotes, errors, failedSymbols);
     }
 
-    private void setSymbolParamString(String[] tickerSymbols) {
-        StringBuilder sb = new StringBuilder();
-        int length = tickerSymbols.length;
-        if (length > 0) {
-            sb.append(tickerSymbols[0]);
-            for (int i = 1; i < length; i++) {
-                sb.append("+").append(tickerSymbols[i]);
+    /**
+     * Publishes the quotes of a call as the latest quotes.
+     */
+    private void publish(String[] tickerSymbols, YFFieldPlan plan, Map<String, YFQuote> quotes) {
+        snapshotStore.publish(quotes.values());
+        lastRequest = new LastRequest(tickerSymbols.clone(), plan);
+    }
+
+    /**
+     * Loads the quotes that can be loaded into the maps, and the errors of
+     * those that cannot, with the symbols of the failed rows, null for a row
+     * whose symbol cannot be told.
+     */
+    private void fetchTolerant(String[] tickerSymbols, YFFieldPlan plan, final boolean retry,
+            final Map<String, YFQuote> quotes, final List<YFRowError> errors,
+            final Set<String> failed) throws Exception {
+        final Set<String> requested = new HashSet<String>(Arrays.asList(tickerSymbols));
+        final int column = Arrays.asList(plan.fetchFields()).indexOf(YFField.SYMBOL);
+        fetch(tickerSymbols, plan, new QuoteHandler() {
+            @Override
+            boolean quoteLoaded(YFQuote quote) {
+                synchronized (quotes) {
+                    quotes.put(quote.getId(), quote);
+                }
+                return true;
+            }
+
+            @Override
+            boolean handleError(String line, YFException error) {
+                String symbol = guessSymbol(line, column, requested);
+                synchronized (quotes) {
+                    errors.add(new YFRowError(line, symbol, error, retry));
+                    failed.add(symbol);
+                }
+                return true;
+            }
+
+            @Override
+            boolean batchFailed(String[] tickerSymbols, Exception failure) {
+                synchronized (quotes) {
+                    errors.add(new YFRowError(null, null, failure, retry));
+                    Collections.addAll(failed, tickerSymbols);
+                }
+                return true;
             }
+        });
+    }
+
+    /**
+     * @return The requested symbol in the given column of a line that could
+     * not be tokenized, or null if there is none
+     */
+    private static String guessSymbol(String line, int column, Set<String> requested) {
+        if (column < 0) {
+            return null;
         }
-        symbolParamString = sb.toString();
+        String[] parts = line.split(",", -1);
+        if (column >= parts.length) {
+            return null;
+        }
+        String symbol = parts[column].replace("\"", "").trim();
+        return requested.contains(symbol) ? symbol : null;
     }
 
-    private void setFieldOptionParamString(YFField[] fieldOptions) {
-        StringBuilder sb = new StringBuilder();
-        int length = fieldOptions.length;
-        for (int i = 0; i < length; i++) {
-            sb.append(fieldOptions[i].getFieldId());
+    /**
+     * Retrieves the quote information for the given list of ticker symbols and
+     * passes each quote to the listener as soon as its csv line is parsed,
+     * without collecting the quotes in a map.  The call returns once all
+     * quotes have been delivered or the listener cancels the stream.
+     *
+     * @param tickerSymbols Ticker symbols as defined by Yahoo! Finance
+     * @param fieldOptions The fields that will be retrieved from Yahoo! Finance
+     * @param listener Receives the quotes, one at a time
+     * @throws YFPartialResultException if some batches failed, after the
+     * quotes of the others have been delivered
+     * @throws Exception
+     */
+    public void streamQuotes(String[] tickerSymbols, YFField[] fieldOptions, final YFQuoteListener listener) throws Exception {
+
+        if (tickerSymbols == null || tickerSymbols.length == 0) {
+            throw new IllegalArgumentException("Yahoo Finance ticker symbols cannot be empty/null");
         }
-        fieldOptionParamString = sb.toString();
+
+        if (fieldOptions == null || fieldOptions.length == 0) {
+            throw new IllegalArgumentException("Yahoo Finance field options cannot be empty/null");
+        }
+
+        if (listener == null) {
+            throw new IllegalArgumentException("YFApi quote listener cannot be null");
+        }
+
+        streamQuotes(tickerSymbols, YFFieldPlan.getPlan(fieldOptions), listener);
     }
 
-    private void loadQuoteDataMap(String csvData, YFField[] fieldOptions) throws IOException {
-        EnumMap<YFField, YFDataItem> dataItemMap = new EnumMap<YFField, YFDataItem>(YFField.class);
-        YFQuote quote;
-        YFDataItem yfdi;
-        String tokenData;
+    private void streamQuotes(String[] tickerSymbols, YFFieldPlan plan, final YFQuoteListener listener) throws Exception {
+        final AtomicBoolean cancelled = new AtomicBoolean();
+        fetch(tickerSymbols, plan, new QuoteHandler() {
+            @Override
+            boolean isCancelled() {
+                return cancelled.get();
+            }
+
+            @Override
+            boolean quoteLoaded(YFQuote quote) {
+                synchronized (listener) {
+                    if (cancelled.get()) {
+                        return false;
+                    }
+                    if (!listener.quoteReceived(quote)) {
+                        cancelled.set(true);
+                        return false;
+                    }
+                }
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Retrieves the quote information for the given list of ticker symbols
+     * into a columnar snapshot, one primitive array per field.  The csv data
+     * is loaded straight into the columns without creating
+     * <code>YFQuote</code> objects, unless a journal is set.
+     *
+     * @param tickerSymbols Ticker symbols as defined by Yahoo! Finance
+     * @param fieldOptions The fields that will be retrieved from Yahoo! Finance
+     * @return The snapshot of the quotes returned
+     * @throws YFPartialResultException if some batches failed, with the
+     * snapshot of the others
+     * @throws Exception
+     */
+    public YFColumnarSnapshot retrieveSnapshot(String[] tickerSymbols, YFField[] fieldOptions) throws Exception {
+
+        if (tickerSymbols == null || tickerSymbols.length == 0) {
+            throw new IllegalArgumentException("Yahoo Finance ticker symbols cannot be empty/null");
+        }
 
-        // parse line into tokens, separated by the delimiter
-        ArrayList<String> tokenList = parseTokens(csvData);
+        if (fieldOptions == null || fieldOptions.length == 0) {
+            throw new IllegalArgumentException("Yahoo Finance field options cannot be empty/null");
+        }
+
+        YFFieldPlan plan = YFFieldPlan.getPlan(fieldOptions);
+        final YFColumnarSnapshot.Builder builder = new YFColumnarSnapshot.Builder(plan, tickerSymbols.length);
+        final YFJournalWriter quoteJournal = journal;
+        final long requestTime = System.currentTimeMillis();
+        try {
+            fetch(tickerSymbols, plan, new RowHandler() {
+                @Override
+                public boolean handleRow(YFTokenizer tokenizer, YFFieldPlan plan) {
+                    if (quoteJournal != null) {
+                        journal(quoteJournal, loadQuoteDataMap(tokenizer, plan), requestTime);
+                    }
+                    synchronized (builder) {
+                        builder.addRow(tokenizer);
+                    }
+                    return true;
+                }
+            });
+        } catch (YFPartialResultException e) {
+            e.setSnapshot(builder.build());
+            throw e;
+        }
+        return builder.build();
+    }
 
-        // if number of tokens in csv line does not match the number of field options, 
-        // something has gone wrong...
-        if (fieldOptions.length != tokenList.size()) {
-            throw new IllegalArgumentException("YFApi field option/token mismatch error");
+    /**
+     * Receives each csv line of a response once it has been tokenized.
+     * Handlers can be called from several batch threads at the same time.
+     */
+    private abstract static class RowHandler {
+
+        /**
+         * @return true to continue, false to stop reading the response and
+         * skip any batches not yet started
+         */
+        abstract boolean handleRow(YFTokenizer tokenizer, YFFieldPlan plan);
+
+        /**
+         * Called for a line that cannot be tokenized or does not hold a token
+         * per field option.
+         *
+         * @return true to skip the line and continue, false to fail the
+         * request with the error
+         */
+        boolean handleError(String line, YFException error) {
+            return false;
         }
-        int fieldIdx = 0;
 
-        // for each token/field, create a YFDataItem and load into a map
-        for(String token : tokenList) {
-            yfdi = new YFDataItem(fieldOptions[fieldIdx++], token);
-            dataItemMap.put(yfdi.getYFField(), yfdi);
+        /**
+         * Called for a batch that failed and whose rows are missing.
+         *
+         * @return true if the handler records the failure itself, false to
+         * fail the call with a <code>YFPartialResultException</code>
+         */
+        boolean batchFailed(String[] tickerSymbols, Exception failure) {
+            return false;
         }
+    }
 
-        quote = new YFQuote(dataItemMap.get(YFField.SYMBOL).getValue(), dataItemMap);
+    /**
+     * Loads each row as a <code>YFQuote</code> and appends it to the journal
+     * set when the handler was created, the way every call that loads
+     * quotes records them.
+     */
+    private abstract class QuoteHandler extends RowHandler {
+
+        private final YFJournalWriter quoteJournal = journal;
+        private final long requestTime = System.currentTimeMillis();
+
+        @Override
+        boolean handleRow(YFTokenizer tokenizer, YFFieldPlan plan) {
+            if (isCancelled()) {
+                return false;
+            }
+            YFQuote quote = loadQuoteDataMap(tokenizer, plan);
+            if (quoteJournal != null) {
+                journal(quoteJournal, quote, requestTime);
+            }
+            return quoteLoaded(quote);
+        }
+
+        /**
+         * @return true to skip the remaining rows without loading them
+         */
+        boolean isCancelled() {
+            return false;
+        }
 
-        getQuoteMap().put(quote.getId(), quote);
-
-    }
-
-    // Unfortunately it is not as simple as using String.split or StringTokenizer
-    // to parse the csv data from Yahoo! Finance.  This is because some fields
-    // contain embedded commas (name for example)
-    private ArrayList<String> parseTokens(String quoteLine) throws IOException {
-        if (quoteLine == null) {
-            throw new IllegalArgumentException("parseTokens cannot accept null parameter");
-        }
-        ArrayList<String> tokenList = new ArrayList<String>();
-        CharArrayReader charReader = new CharArrayReader(quoteLine.toCharArray());
-        int c = charReader.read();
-        if (c == -1) {
-            //empty quote line??
-            return tokenList;
-        }
-        StringBuffer sb;
-        while (c != -1) {
-            sb = new StringBuffer();
-            if (c == ',') {
-                c = charReader.read();
-                if (c == ',' || c == -1) {
-                    //empty token
-                    sb.append("N/A");
-                    tokenList.add(sb.toString());
-                    c = charReader.read();
+        /**
+         * @return true to continue, false to stop reading the response
+         */
+        abstract boolean quoteLoaded(YFQuote quote);
+    }
+
+    /**
+     * Appends a quote to the journal.  A quote that cannot be written is
+     * logged and still returned.
+     */
+    private static void journal(YFJournalWriter quoteJournal, YFQuote quote, long requestTime) {
+        try {
+            quoteJournal.append(quote, requestTime);
+        } catch (IOException e) {
+            Logger.getLogger(YFApi.class.getName()).log(Level.WARNING,
+                    "YFApi cannot journal quote " + quote.getId(), e);
+        }
+    }
+
+    private void fetch(String[] tickerSymbols, YFFieldPlan plan, RowHandler handler) throws Exception {
+        int size = batchSize;
+        if (size == 0 || tickerSymbols.length <= size) {
+            fetchRows(tickerSymbols, plan, handler);
+        } else {
+            fetchBatches(splitSymbols(tickerSymbols, size), plan, handler);
+        }
+    }
+
+    /**
+     * Fetches the symbols in batches, at most <code>maxConnections</code> at a
+     * time.  A failed batch is logged and skipped so that the rows of the
+     * remaining batches are still handled.  If every batch fails the first
+     * failure is rethrown; if only some fail, and the handler does not
+     * record the failures itself, a <code>YFPartialResultException</code>
+     * listing their symbols is thrown once the others are done.
+     * <p>
+     * The batches are scoped to this call: if the calling thread is
+     * interrupted the batches still running are cancelled, and the call does
+     * not return before every batch thread has finished.
+     */
+    private void fetchBatches(List<String[]> batches, final YFFieldPlan plan, final RowHandler handler) throws Exception {
+        ExecutorService executor = isVirtualThreads()
+                ? YFExecutors.newVirtualThreadExecutor("YFApi-batch")
+                : YFExecutors.newFixedThreadPool(Math.min(maxConnections, batches.size()), "YFApi-batch");
+        final AtomicBoolean stopped = new AtomicBoolean();
+        try {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>(batches.size());
+            for (final String[] batch : batches) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        if (!stopped.get() && !fetchRows(batch, plan, handler)) {
+                            stopped.set(true);
+                        }
+                        return null;
+                    }
+                }));
+            }
+
+            Exception firstFailure = null;
+            int failedBatches = 0;
+            List<String> failedSymbols = new ArrayList<String>();
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    futures.get(i).get();
+                } catch (ExecutionException e) {
+                    Exception cause = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                    Logger.getLogger(YFApi.class.getName()).log(Level.WARNING,
+                            "YFApi batch " + (i + 1) + " of " + batches.size() + " failed", cause);
+                    if (!handler.batchFailed(batches.get(i), cause)) {
+                        Collections.addAll(failedSymbols, batches.get(i));
+                    }
+                    if (firstFailure == null) {
+                        firstFailure = cause;
+                    }
+                    failedBatches++;
                 }
-                continue;
             }
-            if (c == '"') {
-                c = charReader.read();
-                if (c == '"') {
-                    // empty quoted string
-                    tokenList.add("N/A");
-                    c = charReader.read();
-                    continue;
+            if (failedBatches == batches.size()) {
+                throw firstFailure;
+            }
+            if (!failedSymbols.isEmpty()) {
+                throw new YFPartialResultException("YFApi " + failedBatches + " of " + batches.size()
+                        + " batches failed", failedSymbols, firstFailure);
+            }
+        } finally {
+            executor.shutdownNow();
+            awaitTermination(executor);
+        }
+    }
+
+    static void awaitTermination(ExecutorService executor) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                    break;
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static List<String[]> splitSymbols(String[] tickerSymbols, int size) {
+        List<String[]> batches = new ArrayList<String[]>((tickerSymbols.length + size - 1) / size);
+        for (int from = 0; from < tickerSymbols.length; from += size) {
+            batches.add(Arrays.copyOfRange(tickerSymbols, from, Math.min(from + size, tickerSymbols.length)));
+        }
+        return batches;
+    }
+
+    /**
+     * Fetches one request, holding a connection permit while it is read.
+     *
+     * @return false if the handler stopped the response early
+     */
+    private boolean fetchRows(String[] tickerSymbols, YFFieldPlan plan, RowHandler handler) throws Exception {
+        YFField[] fieldOptions = plan.fetchFields();
+        YFReader yfReader = new YFReader(requestTemplates.get(tickerSymbols, plan).getURL(), transport);
+        YFTokenizer tokenizer = new YFTokenizer();
+        CharSequence csvDataLine;
+        YFMetricsListener metrics = metricsListener;
+        yfReader.setMetricsListener(metrics);
+        yfReader.setCharset(charset);
+        int lineCount = 0;
+        int errorCount = 0;
+        long parseNanos = 0;
+
+        Semaphore permits = connectionPermits;
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            yfReader.close();
+            throw new YFException("YFApi interrupted while waiting for a connection", e);
+        }
+        try {
+            // parse/load the csv data from Yahoo! Finance
+            while ((csvDataLine = yfReader.readCsvLine()) != null) {
+                long parseStart = metrics != null ? System.nanoTime() : 0;
+
+                // parse line into tokens, separated by the delimiter.  Unfortunately
+                // it is not as simple as using String.split or StringTokenizer,
+                // because some fields contain embedded commas (name for example)
+                YFException rowError = null;
+                try {
+                    int tokenCount = tokenizer.tokenize(csvDataLine);
+
+                    // if number of tokens in csv line does not match the number of field options, 
+                    // something has gone wrong...
+                    if (fieldOptions.length != tokenCount) {
+                        if (metrics != null) {
+                            metrics.tokenMismatch();
+                        }
+                        rowError = new YFFieldException("YFApi field option/token mismatch error");
+                    }
+                } catch (IOException e) {
+                    rowError = new YFPermanentException("YFApi malformed csv line: " + e.getMessage(), e);
                 }
-                while (c != '"') { // take anything inside quotes as single field
-                    if (c == -1) {
-                        throw new IOException("Missing end quote!");
+                if (rowError != null) {
+                    errorCount++;
+                    if (!handler.handleError(csvDataLine.toString(), rowError)) {
+                        throw rowError;
                     }
-                    sb.append((char) c);
-                    c = charReader.read();
+                    continue;
+                }
+                lineCount++;
+                boolean more = handler.handleRow(tokenizer, plan);
+                if (metrics != null) {
+                    parseNanos += System.nanoTime() - parseStart;
+                }
+                if (!more) {
+                    return false;
                 }
-                tokenList.add(sb.toString());
-                c = charReader.read();
-                continue;
             }
-            while (c != ',' && c != -1) { // take anything up to a comma or end
-                sb.append((char) c);
-                c = charReader.read();
+            // a row in error was returned, so it was not dropped
+            if (metrics != null && lineCount + errorCount < tickerSymbols.length) {
+                metrics.symbolsDropped(tickerSymbols.length - lineCount - errorCount);
+            }
+        } finally {
+            yfReader.close();
+            permits.release();
+            if (metrics != null) {
+                metrics.stageCompleted(YFStage.PARSE, parseNanos);
+                metrics.linesParsed(lineCount);
             }
-            tokenList.add(sb.toString());
         }
-        charReader.close();
-        return tokenList;
+        return true;
     }
 
-    private Map<String, YFQuote> getQuoteMap() {
-        if (quoteMap == null) {
-            quoteMap = new HashMap<String, YFQuote>();
+    private static String joinSymbols(String[] tickerSymbols) {
+        StringBuilder sb = new StringBuilder();
+        int length = tickerSymbols.length;
+        if (length > 0) {
+            sb.append(tickerSymbols[0]);
+            for (int i = 1; i < length; i++) {
+                sb.append("+").append(tickerSymbols[i]);
+            }
         }
-        return quoteMap;
+        return sb.toString();
+    }
+
+    private YFQuote loadQuoteDataMap(YFTokenizer tokenizer, YFFieldPlan plan) {
+        YFField[] fieldOptions = plan.fetchFields();
+        YFQuote quote;
+
+        // find the symbol, sharing the dictionary's instance of it
+        int symbolIdx = plan.symbolColumn();
+        if (!tokenizer.isEmpty(symbolIdx)) {
+            int symbolId = YFSymbolDictionary.getDefault().getId(tokenizer.getLine(),
+                    tokenizer.getTokenStart(symbolIdx), tokenizer.getTokenEnd(symbolIdx));
+            // the data items are only created when asked for
+            quote = new YFQuote(symbolId, tokenizer, plan);
+            return quote;
+        }
+
+        EnumMap<YFField, YFDataItem> dataItemMap = new EnumMap<YFField, YFDataItem>(YFField.class);
+        YFDataItem yfdi;
+
+        // for each token/field, create a YFDataItem and load into a map
+        for (int fieldIdx = 0; fieldIdx < fieldOptions.length; fieldIdx++) {
+            yfdi = new YFDataItem(fieldOptions[fieldIdx], tokenizer.getToken(fieldIdx));
+            dataItemMap.put(yfdi.getYFField(), yfdi);
+        }
+        YFField[] columns = plan.columns();
+        for (int col = fieldOptions.length; col < columns.length; col++) {
+            yfdi = new YFDataItem(columns[col], plan.derive(col, tokenizer));
+            dataItemMap.put(yfdi.getYFField(), yfdi);
+        }
+
+        quote = new YFQuote(dataItemMap.get(YFField.SYMBOL).getValue(), dataItemMap);
+
+        return quote;
+    }
+
+    /**
+     * @return The store of the latest quote of each symbol.  A reader can
+     * take its current snapshot to read one consistent version across
+     * several lookups while later calls publish new quotes.
+     */
+    public YFSnapshotStore getSnapshotStore() {
+        return snapshotStore;
+    }
+
+    /**
+     * Releases the latest quotes.
+     */
+    public void clearQuotes() {
+        snapshotStore.clear();
+        lastRequest = LastRequest.EMPTY;
     }
 
     private String stripQuotes(String input) {
@@ -234,28 +908,32 @@ public class YFApi {
         return result.trim();
     }
 
-    private URL buildURL() throws MalformedURLException {
-        StringBuilder sb = new StringBuilder();
-        sb.append(baseURL).append(symbolParamString).append("&f=").append(fieldOptionParamString);
-        return new URL(sb.toString());
+    public YFQuote getQuote(String id) {
+        return getQuote(YFSymbolDictionary.getDefault().lookup(id));
     }
 
-    public YFQuote getQuote(String id) {
-        return getQuoteMap().get(id);
+    /**
+     * @param symbolId The id of the symbol in the default
+     * <code>YFSymbolDictionary</code>
+     * @return The latest quote retrieved for the symbol, or null
+     */
+    public YFQuote getQuote(int symbolId) {
+        return snapshotStore.getQuote(symbolId);
     }
 
     public String printPropertyInfo() {
+        LastRequest latest = lastRequest;
         StringBuilder sb = new StringBuilder();
         sb.append("\nYahoo Finance API Properties: ");
-        sb.append("\n\tSymbols=[").append(symbolParamString).append("]");
-        sb.append("\n\tOptions=[").append(fieldOptionParamString).append("]");
+        sb.append("\n\tSymbols=[").append(joinSymbols(latest.symbols)).append("]");
+        sb.append("\n\tOptions=[").append(latest.plan != null ? latest.plan.fieldOptionParam() : "").append("]");
         return sb.toString();
     }
 
     public String printQuoteInfo() {
         StringBuilder sb = new StringBuilder();
         //System.out.println("size of YFApi quoteMap is: " + getQuoteMap().size());
-        Collection<YFQuote> quotes = getQuoteMap().values();
+        Collection<YFQuote> quotes = snapshotStore.current().getQuotes();
         sb.append("\nYahoo Finance API Quote Data:");
         if (quotes != null && quotes.size() > 0) {
             for (YFQuote q : quotes) {
@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2012 Jim Merrell - JDRL Software
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jdrlsoftware.yahoofinance;
+
+import java.util.Map;
+
+/**
+ * A <code>YFQuoteNode</code> that fetches its quotes with a
+ * <code>YFApi</code> in the same JVM, such as one per network interface or
+ * one per <code>YFFixtureTransport</code> when testing.
+ *
+ * @author Jim Merrell - <www.jmerrell.com>
+ */
+public class YFApiNode implements YFQuoteNode {
+
+    private final String name;
+    private final YFApi api;
+
+    public YFApiNode(String name, YFApi api) {
+        if (name == null || name.length() == 0) {
+            throw new IllegalArgumentException("YFApiNode name cannot be empty/null");
+        }
+        if (api == null) {
+            throw new IllegalArgumentException("YFApiNode api cannot be null");
+        }
+        this.name = name;
+        this.api = api;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    public YFApi getApi() {
+        return api;
+    }
+
+    @Override
+    public Map<String, YFQuote> retrieveQuotes(String[] tickerSymbols, YFField[] fieldOptions) throws Exception {
+        return api.retrieveQuotes(tickerSymbols, fieldOptions);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
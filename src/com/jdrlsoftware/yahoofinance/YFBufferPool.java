@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2012 Jim Merrell - JDRL Software
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jdrlsoftware.yahoofinance;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of the byte buffers responses are read into, so that a request
+ * does not allocate a new buffer.  Buffers are heap buffers of
+ * {@link #BUFFER_SIZE} bytes; at most {@link #MAX_POOLED} idle buffers are
+ * kept.
+ *
+ * @author Jim Merrell - <www.jmerrell.com>
+ */
+final class YFBufferPool {
+
+    static final int BUFFER_SIZE = 32 * 1024;
+    static final int MAX_POOLED = 64;
+
+    private static final ConcurrentLinkedQueue<ByteBuffer> POOL = new ConcurrentLinkedQueue<ByteBuffer>();
+    private static final AtomicInteger POOLED = new AtomicInteger();
+
+    private YFBufferPool() {
+    }
+
+    /**
+     * @return An empty buffer, ready to be written to
+     */
+    static ByteBuffer acquire() {
+        ByteBuffer buffer = POOL.poll();
+        if (buffer == null) {
+            return ByteBuffer.allocate(BUFFER_SIZE);
+        }
+        POOLED.decrementAndGet();
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer to the pool.  Buffers that were not acquired from the
+     * pool, such as those grown for a long line, are dropped.
+     */
+    static void release(ByteBuffer buffer) {
+        if (buffer.capacity() != BUFFER_SIZE || buffer.isDirect()) {
+            return;
+        }
+        if (POOLED.incrementAndGet() > MAX_POOLED) {
+            POOLED.decrementAndGet();
+            return;
+        }
+        POOL.offer(buffer);
+    }
+}
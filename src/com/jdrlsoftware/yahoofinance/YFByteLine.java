@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2012 Jim Merrell - JDRL Software
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jdrlsoftware.yahoofinance;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A line of ASCII csv data seen in place in the buffer it was read into.
+ * <p>
+ * Each byte is one character, so the line can be tokenized and its numbers
+ * parsed without decoding it; a <code>String</code> is only created when
+ * {@link #toString()} is called, for example for a text field.  The view is
+ * only valid until the next line is read, and is not thread safe.
+ *
+ * @author Jim Merrell - <www.jmerrell.com>
+ */
+public final class YFByteLine implements CharSequence {
+
+    private byte[] bytes;
+    private int offset;
+    private int length;
+
+    YFByteLine() {
+    }
+
+    private YFByteLine(byte[] bytes, int offset, int length) {
+        set(bytes, offset, length);
+    }
+
+    void set(byte[] bytes, int offset, int length) {
+        this.bytes = bytes;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("YFByteLine index " + index + " out of range, length=" + length);
+        }
+        return (char) (bytes[offset + index] & 0xff);
+    }
+
+    /**
+     * @return A view of part of the line, sharing its bytes
+     */
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException("YFByteLine range " + start + "-" + end + " out of range, length=" + length);
+        }
+        return new YFByteLine(bytes, offset + start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        return new String(bytes, offset, length, StandardCharsets.ISO_8859_1);
+    }
+}
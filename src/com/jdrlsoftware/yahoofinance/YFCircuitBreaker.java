@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2012 Jim Merrell - JDRL Software
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jdrlsoftware.yahoofinance;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stops requests to a failing service for a while.
+ * <p>
+ * The breaker starts CLOSED and lets every request through.  After
+ * <code>failureThreshold</code> failures in a row it opens, and requests are
+ * refused until the open time has passed.  It then lets a single trial
+ * request through (HALF_OPEN): if the trial succeeds the breaker closes,
+ * otherwise it opens again.  A breaker can be shared between threads.
+ *
+ * @author Jim Merrell - <www.jmerrell.com>
+ */
+public class YFCircuitBreaker {
+
+    public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    public static final long DEFAULT_OPEN_MILLIS = 30000;
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openNanos;
+    private State state = State.CLOSED;
+    private int failures;
+    private long openedAt;
+
+    public YFCircuitBreaker() {
+        this(DEFAULT_FAILURE_THRESHOLD, DEFAULT_OPEN_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param failureThreshold The number of failures in a row that opens the
+     * breaker
+     * @param openTime How long the breaker stays open before a trial request
+     * @param unit Unit of the open time
+     */
+    public YFCircuitBreaker(int failureThreshold, long openTime, TimeUnit unit) {
+        if (failureThreshold < 1) {
+            throw new IllegalArgumentException("YFCircuitBreaker failure threshold must be at least 1");
+        }
+        if (openTime <= 0) {
+            throw new IllegalArgumentException("YFCircuitBreaker open time must be positive");
+        }
+        this.failureThreshold = failureThreshold;
+        this.openNanos = unit.toNanos(openTime);
+    }
+
+    /**
+     * @return true if a request may be made now; if so its outcome must be
+     * reported with {@link #onSuccess()} or {@link #onFailure()}
+     */
+    public synchronized boolean allowRequest() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.nanoTime() - openedAt >= openNanos) {
+                    state = State.HALF_OPEN;
+                    return true;
+                }
+                return false;
+            default:
+                // a trial request is already in progress
+                return false;
+        }
+    }
+
+    public synchronized void onSuccess() {
+        failures = 0;
+        state = State.CLOSED;
+    }
+
+    public synchronized void onFailure() {
+        failures++;
+        if (state == State.HALF_OPEN || failures >= failureThreshold) {
+            state = State.OPEN;
+            openedAt = System.nanoTime();
+        }
+    }
+
+    public synchronized State getState() {
+        if (state == State.OPEN && System.nanoTime() - openedAt >= openNanos) {
+            return State.HALF_OPEN;
+        }
+        return state;
+    }
+}
@@ -0,0 +1,558 @@
+/*
+ * Copyright (C) 2012 Jim Merrell - JDRL Software
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jdrlsoftware.yahoofinance;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Quote data for many symbols stored column by column.
+ * <p>
+ * Each symbol is a row and each requested <code>YFField</code> is a column
+ * holding one primitive array: a <code>double[]</code> for price, percent and
+ * magnitude fields, a <code>long[]</code> for integer, date and time fields,
+ * and an <code>int[]</code> of dictionary codes for text fields.  Values that
+ * are not available are <code>Double.NaN</code>,
+ * <code>YFValueType.NA_LONG</code> or {@link #NA_CODE}.  A scan of one field
+ * across all symbols is a loop over one array, for example:
+ * <pre>
+ *   double[] chg = snapshot.getDoubleColumn(YFField.CHG_PERCENT_REAL_TIME);
+ *   for (int row = 0; row &lt; snapshot.size(); row++) {
+ *       if (chg[row] &gt; 5) {
+ *           ...snapshot.getSymbol(row)...
+ *       }
+ *   }
+ * </pre>
+ * The arrays returned are the snapshot's own storage and must not be
+ * modified.  A snapshot never changes once built.
+ *
+ * @author Jim Merrell - <www.jmerrell.com>
+ */
+public class YFColumnarSnapshot {
+
+    /**
+     * Dictionary code of a text value that is not available.
+     */
+    public static final int NA_CODE = -1;
+
+    private final YFField[] fields;
+    private final int[] columnIndex;
+    private final int size;
+    private final String[] symbols;
+    private final int[] symbolIds;
+    private final int[] rowTable;
+    private final double[][] doubleColumns;
+    private final long[][] longColumns;
+    private final int[][] codeColumns;
+    private final String[][] dictionaries;
+
+    private YFColumnarSnapshot(Builder builder) {
+        this.fields = builder.fields;
+        this.columnIndex = builder.columnIndex;
+        this.size = builder.size;
+        this.symbols = Arrays.copyOf(builder.symbols, size);
+        this.symbolIds = Arrays.copyOf(builder.symbolIds, size);
+        this.rowTable = builder.rowTable.clone();
+        int columns = fields.length;
+        this.doubleColumns = new double[columns][];
+        this.longColumns = new long[columns][];
+        this.codeColumns = new int[columns][];
+        this.dictionaries = new String[columns][];
+        for (int col = 0; col < columns; col++) {
+            if (builder.doubleColumns[col] != null) {
+                doubleColumns[col] = Arrays.copyOf(builder.doubleColumns[col], size);
+            } else if (builder.longColumns[col] != null) {
+                longColumns[col] = Arrays.copyOf(builder.longColumns[col], size);
+            } else if (builder.codeColumns[col] != null) {
+                codeColumns[col] = Arrays.copyOf(builder.codeColumns[col], size);
+                dictionaries[col] = builder.dictionaries[col].toArray();
+            }
+        }
+    }
+
+    /**
+     * Builds a snapshot from quotes already loaded, for example the map
+     * returned by <code>YFApi.retrieveQuotes</code>.
+     *
+     * @param quotes The quotes, one row each
+     * @param fieldOptions The fields to store, must include SYMBOL
+     * @return The snapshot
+     */
+    public static YFColumnarSnapshot fromQuotes(Collection<YFQuote> quotes, YFField[] fieldOptions) {
+        Builder builder = new Builder(fieldOptions, quotes.size());
+        for (YFQuote quote : quotes) {
+            builder.addQuote(quote);
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return The number of symbols (rows)
+     */
+    public int size() {
+        return size;
+    }
+
+    public YFField[] getFields() {
+        return fields.clone();
+    }
+
+    public boolean containsField(YFField yff) {
+        return columnIndex[yff.ordinal()] >= 0;
+    }
+
+    public String getSymbol(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("YFColumnarSnapshot row " + row + " out of range, size=" + size);
+        }
+        return symbols[row];
+    }
+
+    /**
+     * @return The row of the symbol, or -1 if the snapshot does not contain it
+     */
+    public int indexOf(String symbol) {
+        int symbolId = YFSymbolDictionary.getDefault().lookup(symbol);
+        if (symbolId < 0) {
+            return -1;
+        }
+        return rowTable[slot(rowTable, symbolIds, symbolId)];
+    }
+
+    /**
+     * Finds the slot of a symbol id in a table of rows, probing linearly
+     * from its hash.
+     *
+     * @return The slot holding the row of the symbol, or the empty slot
+     * (holding -1) where it would be added
+     */
+    private static int slot(int[] rowTable, int[] symbolIds, int symbolId) {
+        int mask = rowTable.length - 1;
+        int slot = YFIntMap.mix(symbolId) & mask;
+        while (rowTable[slot] >= 0 && symbolIds[rowTable[slot]] != symbolId) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * @param yff A price, percent or magnitude field
+     * @return The values of the field for all rows
+     */
+    public double[] getDoubleColumn(YFField yff) {
+        double[] column = doubleColumns[column(yff)];
+        if (column == null) {
+            throw new IllegalArgumentException("YFColumnarSnapshot field " + yff + " is not a double column");
+        }
+        return column;
+    }
+
+    /**
+     * @param yff An integer, date or time field
+     * @return The values of the field for all rows
+     */
+    public long[] getLongColumn(YFField yff) {
+        long[] column = longColumns[column(yff)];
+        if (column == null) {
+            throw new IllegalArgumentException("YFColumnarSnapshot field " + yff + " is not a long column");
+        }
+        return column;
+    }
+
+    /**
+     * @param yff A text field
+     * @return The dictionary codes of the field for all rows
+     * @see #getDictionaryValue(YFField, int)
+     */
+    public int[] getCodeColumn(YFField yff) {
+        int[] column = codeColumns[column(yff)];
+        if (column == null) {
+            throw new IllegalArgumentException("YFColumnarSnapshot field " + yff + " is not a text column");
+        }
+        return column;
+    }
+
+    /**
+     * @return The text value of a dictionary code of a text field
+     */
+    public String getDictionaryValue(YFField yff, int code) {
+        getCodeColumn(yff);
+        if (code == NA_CODE) {
+            return YFTokenizer.EMPTY_TOKEN;
+        }
+        return dictionaries[column(yff)][code];
+    }
+
+    public double getDouble(YFField yff, int row) {
+        int col = column(yff);
+        if (doubleColumns[col] != null) {
+            return doubleColumns[col][row];
+        }
+        if (longColumns[col] != null) {
+            long value = longColumns[col][row];
+            return value == YFValueType.NA_LONG ? Double.NaN : value;
+        }
+        return Double.NaN;
+    }
+
+    public long getLong(YFField yff, int row) {
+        int col = column(yff);
+        if (longColumns[col] != null) {
+            return longColumns[col][row];
+        }
+        if (doubleColumns[col] != null) {
+            double value = doubleColumns[col][row];
+            return Double.isNaN(value) ? YFValueType.NA_LONG : Math.round(value);
+        }
+        return YFValueType.NA_LONG;
+    }
+
+    /**
+     * @param yff A text field
+     * @return The text value of the field in the given row
+     */
+    public String getString(YFField yff, int row) {
+        if (yff == YFField.SYMBOL) {
+            return getSymbol(row);
+        }
+        return getDictionaryValue(yff, getCodeColumn(yff)[row]);
+    }
+
+    /**
+     * @return The rows whose value of the field is greater than the
+     * threshold, in row order
+     */
+    public int[] findRowsAbove(YFField yff, double threshold) {
+        double[] column = getDoubleColumn(yff);
+        int[] rows = new int[size];
+        int count = 0;
+        for (int row = 0; row < size; row++) {
+            if (column[row] > threshold) {
+                rows[count++] = row;
+            }
+        }
+        return Arrays.copyOf(rows, count);
+    }
+
+    private int column(YFField yff) {
+        int col = columnIndex[yff.ordinal()];
+        if (col < 0) {
+            throw new IllegalArgumentException("YFColumnarSnapshot does not contain field " + yff);
+        }
+        return col;
+    }
+
+    /**
+     * Loads rows into growing column arrays.  A row for a symbol that was
+     * already added replaces the earlier row.  A builder is not thread safe.
+     */
+    public static class Builder {
+
+        private final YFField[] fields;
+        private final int[] columnIndex;
+        private final int symbolColumn;
+        private int size;
+        private String[] symbols;
+
+        /**
+         * The symbol id of each row, in the default
+         * <code>YFSymbolDictionary</code>
+         */
+        private int[] symbolIds;
+
+        /**
+         * The rows, by the hash of their symbol id
+         */
+        private int[] rowTable;
+        private final double[][] doubleColumns;
+        private final long[][] longColumns;
+        private final int[][] codeColumns;
+        private final Dictionary[] dictionaries;
+
+        /**
+         * The plan the csv lines are requested with, null if each column is
+         * a csv column
+         */
+        private final YFFieldPlan plan;
+
+        /**
+         * @param fieldOptions The fields in the order of the csv columns, must
+         * include SYMBOL
+         * @param expectedSize The number of rows expected
+         */
+        public Builder(YFField[] fieldOptions, int expectedSize) {
+            this(fieldOptions, null, expectedSize);
+        }
+
+        /**
+         * @param plan The plan the csv lines are requested with; its derived
+         * fields are computed for each row
+         * @param expectedSize The number of rows expected
+         */
+        Builder(YFFieldPlan plan, int expectedSize) {
+            this(plan.columns(), plan, expectedSize);
+        }
+
+        private Builder(YFField[] fieldOptions, YFFieldPlan plan, int expectedSize) {
+            if (fieldOptions == null || fieldOptions.length == 0) {
+                throw new IllegalArgumentException("YFColumnarSnapshot field options cannot be empty/null");
+            }
+            this.plan = plan;
+            this.fields = fieldOptions.clone();
+            this.columnIndex = new int[YFField.values().length];
+            Arrays.fill(columnIndex, -1);
+            int capacity = Math.max(expectedSize, 16);
+            this.symbols = new String[capacity];
+            this.symbolIds = new int[capacity];
+            this.rowTable = newRowTable(capacity * 2);
+            int columns = fields.length;
+            this.doubleColumns = new double[columns][];
+            this.longColumns = new long[columns][];
+            this.codeColumns = new int[columns][];
+            this.dictionaries = new Dictionary[columns];
+            for (int col = 0; col < columns; col++) {
+                YFField yff = fields[col];
+                if (columnIndex[yff.ordinal()] >= 0) {
+                    throw new IllegalArgumentException("YFColumnarSnapshot duplicate field option " + yff);
+                }
+                columnIndex[yff.ordinal()] = col;
+                if (yff == YFField.SYMBOL) {
+                    continue;
+                }
+                switch (yff.getValueType()) {
+                    case PRICE:
+                    case PERCENT:
+                    case MAGNITUDE:
+                        doubleColumns[col] = new double[capacity];
+                        break;
+                    case INTEGER:
+                    case DATE:
+                    case TIME:
+                        longColumns[col] = new long[capacity];
+                        break;
+                    default:
+                        codeColumns[col] = new int[capacity];
+                        dictionaries[col] = new Dictionary();
+                }
+            }
+            this.symbolColumn = columnIndex[YFField.SYMBOL.ordinal()];
+            if (symbolColumn < 0) {
+                throw new IllegalArgumentException("YFColumnarSnapshot field options must include SYMBOL");
+            }
+        }
+
+        /**
+         * Adds the tokenized csv line as a row.  Only text values are turned
+         * into <code>String</code>s, and only the first time they are seen.
+         *
+         * @param tokenizer A tokenizer holding one token per field option
+         */
+        public void addRow(YFTokenizer tokenizer) {
+            int tokenCount = plan != null ? plan.fetchFields().length : fields.length;
+            if (tokenizer.getTokenCount() != tokenCount) {
+                throw new IllegalArgumentException("YFColumnarSnapshot field option/token mismatch error");
+            }
+            CharSequence line = tokenizer.getLine();
+            int row = row(YFSymbolDictionary.getDefault().getId(line,
+                    tokenizer.getTokenStart(symbolColumn), tokenizer.getTokenEnd(symbolColumn)));
+            for (int col = 0; col < tokenCount; col++) {
+                addValue(row, col, line, tokenizer.getTokenStart(col), tokenizer.getTokenEnd(col));
+            }
+            for (int col = tokenCount; col < fields.length; col++) {
+                String value = plan.derive(col, tokenizer);
+                addValue(row, col, value, 0, value.length());
+            }
+        }
+
+        private void addValue(int row, int col, CharSequence line, int start, int end) {
+            if (doubleColumns[col] != null) {
+                doubleColumns[col][row] = fields[col].getValueType().parseDouble(line, start, end);
+            } else if (longColumns[col] != null) {
+                longColumns[col][row] = fields[col].getValueType().parseLong(line, start, end);
+            } else if (codeColumns[col] != null) {
+                codeColumns[col][row] = dictionaries[col].code(line, start, end);
+            }
+        }
+
+        /**
+         * Adds the values of a quote as a row.
+         */
+        public void addQuote(YFQuote quote) {
+            if (quote.getId() == null) {
+                throw new IllegalArgumentException("YFColumnarSnapshot quote symbol cannot be null");
+            }
+            int row = row(quote.getSymbolId());
+            for (int col = 0; col < fields.length; col++) {
+                YFField yff = fields[col];
+                if (doubleColumns[col] != null) {
+                    doubleColumns[col][row] = quote.getDouble(yff);
+                } else if (longColumns[col] != null) {
+                    longColumns[col][row] = quote.getLong(yff);
+                } else if (codeColumns[col] != null) {
+                    String value = quote.containsField(yff) ? quote.getDataItemValue(yff) : YFTokenizer.EMPTY_TOKEN;
+                    codeColumns[col][row] = dictionaries[col].code(value, 0, value.length());
+                }
+            }
+        }
+
+        /**
+         * @return The row of the symbol id, added if the symbol has no row
+         * yet
+         */
+        private int row(int symbolId) {
+            int slot = slot(rowTable, symbolIds, symbolId);
+            if (rowTable[slot] >= 0) {
+                return rowTable[slot];
+            }
+            if (size == symbols.length) {
+                grow();
+                slot = slot(rowTable, symbolIds, symbolId);
+            }
+            symbols[size] = YFSymbolDictionary.getDefault().getSymbol(symbolId);
+            symbolIds[size] = symbolId;
+            rowTable[slot] = size;
+            return size++;
+        }
+
+        private static int[] newRowTable(int length) {
+            int tableLength = 4;
+            while (tableLength < length) {
+                tableLength <<= 1;
+            }
+            int[] t = new int[tableLength];
+            Arrays.fill(t, -1);
+            return t;
+        }
+
+        private void grow() {
+            int capacity = symbols.length * 2;
+            symbols = Arrays.copyOf(symbols, capacity);
+            symbolIds = Arrays.copyOf(symbolIds, capacity);
+            // keep the table at most half full
+            rowTable = newRowTable(capacity * 2);
+            for (int row = 0; row < size; row++) {
+                rowTable[slot(rowTable, symbolIds, symbolIds[row])] = row;
+            }
+            for (int col = 0; col < fields.length; col++) {
+                if (doubleColumns[col] != null) {
+                    doubleColumns[col] = Arrays.copyOf(doubleColumns[col], capacity);
+                } else if (longColumns[col] != null) {
+                    longColumns[col] = Arrays.copyOf(longColumns[col], capacity);
+                } else if (codeColumns[col] != null) {
+                    codeColumns[col] = Arrays.copyOf(codeColumns[col], capacity);
+                }
+            }
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public YFColumnarSnapshot build() {
+            return new YFColumnarSnapshot(this);
+        }
+    }
+
+    /**
+     * Assigns dense codes to the distinct values of a text column.  Values are
+     * looked up by their characters, so a value already in the dictionary is
+     * found without creating a <code>String</code>.
+     */
+    private static class Dictionary {
+
+        private String[] values = new String[16];
+        private int count;
+        private int[] table = newTable(32);
+
+        private static int[] newTable(int length) {
+            int[] t = new int[length];
+            Arrays.fill(t, -1);
+            return t;
+        }
+
+        int code(CharSequence line, int start, int end) {
+            if (start == end || isNotAvailable(line, start, end)) {
+                return NA_CODE;
+            }
+            int hash = hash(line, start, end);
+            int mask = table.length - 1;
+            for (int slot = hash & mask;; slot = (slot + 1) & mask) {
+                int code = table[slot];
+                if (code < 0) {
+                    return add(line.subSequence(start, end).toString(), slot);
+                }
+                if (matches(values[code], line, start, end)) {
+                    return code;
+                }
+            }
+        }
+
+        private int add(String value, int slot) {
+            if (count == values.length) {
+                values = Arrays.copyOf(values, count * 2);
+            }
+            values[count] = value;
+            table[slot] = count;
+            if (++count * 2 > table.length) {
+                rehash();
+            }
+            return count - 1;
+        }
+
+        private void rehash() {
+            table = newTable(table.length * 2);
+            int mask = table.length - 1;
+            for (int code = 0; code < count; code++) {
+                int slot = hash(values[code], 0, values[code].length()) & mask;
+                while (table[slot] >= 0) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = code;
+            }
+        }
+
+        String[] toArray() {
+            return Arrays.copyOf(values, count);
+        }
+
+        private static boolean isNotAvailable(CharSequence line, int start, int end) {
+            return end - start == 3 && line.charAt(start) == 'N' && line.charAt(start + 1) == '/'
+                    && line.charAt(start + 2) == 'A';
+        }
+
+        private static int hash(CharSequence s, int start, int end) {
+            int h = 0;
+            for (int i = start; i < end; i++) {
+                h = 31 * h + s.charAt(i);
+            }
+            return h ^ (h >>> 16);
+        }
+
+        private static boolean matches(String value, CharSequence line, int start, int end) {
+            if (value.length() != end - start) {
+                return false;
+            }
+            for (int i = 0; i < value.length(); i++) {
+                if (value.charAt(i) != line.charAt(start + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
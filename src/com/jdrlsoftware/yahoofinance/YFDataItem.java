@@ -24,6 +24,15 @@ package com.jdrlsoftware.yahoofinance;
 public class YFDataItem {
     private final YFField yFField;
     private String value;
+
+    /**
+     * Primitive values, parsed from <code>value</code> on first use. They are
+     * written before <code>parsed</code> is set, so a thread that sees
+     * <code>parsed</code> also sees the values.
+     */
+    private double doubleValue;
+    private long longValue;
+    private volatile boolean parsed;
     
     public YFDataItem(YFField yff, String value) {
         this.yFField = yff;
@@ -32,6 +41,7 @@ public class YFDataItem {
     
     public void setValue(String value) {
         this.value = value;
+        this.parsed = false;
     }
     
     public YFField getYFField() {
@@ -42,6 +52,44 @@ public class YFDataItem {
         return value;
     }
 
+    /**
+     * @return The value as a double, parsed once according to the field's
+     * <code>YFValueType</code>, or <code>Double.NaN</code> if not available
+     */
+    public double getDoubleValue() {
+        if (!parsed) {
+            parse();
+        }
+        return doubleValue;
+    }
+
+    /**
+     * @return The value as a long, parsed once according to the field's
+     * <code>YFValueType</code>, or <code>YFValueType.NA_LONG</code> if not
+     * available
+     */
+    public long getLongValue() {
+        if (!parsed) {
+            parse();
+        }
+        return longValue;
+    }
+
+    private void parse() {
+        YFValueType valueType = yFField.getValueType();
+        if (value == null) {
+            doubleValue = Double.NaN;
+            longValue = YFValueType.NA_LONG;
+        } else if (valueType == YFValueType.DATE || valueType == YFValueType.TIME) {
+            longValue = valueType.parseLong(value);
+            doubleValue = longValue == YFValueType.NA_LONG ? Double.NaN : longValue;
+        } else {
+            doubleValue = valueType.parseDouble(value);
+            longValue = Double.isNaN(doubleValue) ? YFValueType.NA_LONG : Math.round(doubleValue);
+        }
+        parsed = true;
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (obj == null) {
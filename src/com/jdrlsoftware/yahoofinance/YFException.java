@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2012 Jim Merrell - JDRL Software
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jdrlsoftware.yahoofinance;
+
+import java.io.IOException;
+
+/**
+ * The base of the exceptions thrown when quote data cannot be retrieved.
+ * A <code>YFTransientException</code> is worth retrying later, a
+ * <code>YFPermanentException</code> is not.
+ *
+ * @author Jim Merrell - <www.jmerrell.com>
+ */
+public class YFException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int statusCode;
+
+    public YFException(String message) {
+        this(message, -1, null);
+    }
+
+    public YFException(String message, Throwable cause) {
+        this(message, -1, cause);
+    }
+
+    /**
+     * @param message The detail message
+     * @param statusCode The HTTP status of the response, -1 if none
+     * @param cause The cause, or null
+     */
+    public YFException(String message, int statusCode, Throwable cause) {
+        super(message, cause);
+        this.statusCode = statusCode;
+    }
+
+    /**
+     * @return The HTTP status of the response, -1 if the failure was not an
+     * HTTP error
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+}
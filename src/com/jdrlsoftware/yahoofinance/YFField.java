@@ -27,32 +27,32 @@ import java.util.Map;
  */
 public enum YFField {
 
-    ASK("a"),
-    AVG_DAILY_VOLUME("a2"),
-    ASK_SIZE("a5"),
-    BID("b"),
-    ASK_REAL_TIME("b2"),
-    BID_REAL_TIME("b3"),
-    BOOK_VALUE("b4"),
-    BID_SIZE("b6"),
-    CHG_AND_PERCENT_CHG("c"),
-    CHG_AMT("c1"),
-    COMMISION("c3"),
-    CHG_AMT_REAL_TIME("c6"),
-    AFTER_HOURS_CHG_REAL_TIME("c8"),
-    DIV_PER_SHARE("d"),
-    LAST_TRADE_DATE("d1"),
-    TRADE_DATE("d2"),
-    EARNINGS_PER_SHARE("e"),
-    ERROR_INDICATION("e1"),
-    EPS_EST_CURRENT_YEAR("e7"),
-    EPS_EST_NEXT_YEAR("e8"),
-    EPS_EST_NEXT_QUARTER("e9"),
-    FLOAT_SHARES("f6"),
-    DAYS_LOW("g"),
-    DAYS_HIGH("h"),
-    FIFTY_TWO_WEEK_LOW("j"),
-    FIFTY_TWO_WEEK_HIGH("k"),
+    ASK("a", YFValueType.PRICE),
+    AVG_DAILY_VOLUME("a2", YFValueType.INTEGER),
+    ASK_SIZE("a5", YFValueType.INTEGER),
+    BID("b", YFValueType.PRICE),
+    ASK_REAL_TIME("b2", YFValueType.PRICE),
+    BID_REAL_TIME("b3", YFValueType.PRICE),
+    BOOK_VALUE("b4", YFValueType.PRICE),
+    BID_SIZE("b6", YFValueType.INTEGER),
+    CHG_AND_PERCENT_CHG("c", YFValueType.PERCENT),
+    CHG_AMT("c1", YFValueType.PRICE),
+    COMMISION("c3", YFValueType.PRICE),
+    CHG_AMT_REAL_TIME("c6", YFValueType.PRICE),
+    AFTER_HOURS_CHG_REAL_TIME("c8", YFValueType.PERCENT),
+    DIV_PER_SHARE("d", YFValueType.PRICE),
+    LAST_TRADE_DATE("d1", YFValueType.DATE),
+    TRADE_DATE("d2", YFValueType.DATE),
+    EARNINGS_PER_SHARE("e", YFValueType.PRICE),
+    ERROR_INDICATION("e1", YFValueType.TEXT),
+    EPS_EST_CURRENT_YEAR("e7", YFValueType.PRICE),
+    EPS_EST_NEXT_YEAR("e8", YFValueType.PRICE),
+    EPS_EST_NEXT_QUARTER("e9", YFValueType.PRICE),
+    FLOAT_SHARES("f6", YFValueType.INTEGER),
+    DAYS_LOW("g", YFValueType.PRICE),
+    DAYS_HIGH("h", YFValueType.PRICE),
+    FIFTY_TWO_WEEK_LOW("j", YFValueType.PRICE),
+    FIFTY_TWO_WEEK_HIGH("k", YFValueType.PRICE),
     //Note: This API is currently not designed to work with portfolios
     //HOLDINGS_GAIN_PERCENT("g1"),
     //ANNUALIZED_GAIN("g3"),
@@ -61,65 +61,65 @@ public enum YFField {
     //HOLDINGS_GAIN_REAL_TIME("g6"),
     // unclear how to decode/use "more info" value returned so ignore for now
     //MORE_INFO("i"),  
-    ORDER_BOOK_REAL_TIME("i5"),
-    MKT_CAPITALIZATION("j1"),
-    MKT_CAPITALIZATION_REAL_TIME("j3"),
-    EBITDA("j4"),
-    CHG_FROM_FIFTY_TWO_WEEK_LOW("j5"),
-    PERCENT_CHG_FROM_FIFTY_TWO_WEEK_LOW("j6"),
-    LAST_TRADE_WITH_REAL_TIME("k1"),
-    CHG_PERCENT_REAL_TIME("k2"),
-    LAST_TRADE_SIZE("k3"),
-    CHG_FROM_FIFTY_TWO_WEEK_HIGH("k4"),
-    PERCENT_CHG_FROM_FIFTY_TWO_WEEK_HIGH("k5"),
-    LAST_TRADE_WITH_TIME("l"),
-    LAST_TRADE("l1"),
-    HIGH_LIMIT("l2"),
-    LOW_LIMIT("l3"),
-    DAYS_RANGE("m"),
-    DAYS_RANGE_REAL_TIME("m2"),
-    FIFTY_DAY_MOVING_AVG("m3"),
-    CHG_FROM_FIFTY_DAY_MOVING_AVG("m4"),
-    PERCENT_CHG_FROM_FIFTY_DAY_MOVING_AVG("m5"),
-    TWO_HUNDRED_DAY_MOVING_AVG("m6"),
-    CHG_FROM_TWO_HUNDRED_DAY_MOVING_AVG("m7"),
-    PERCENT_CHG_FROM_TWO_HUNDRED_DAY_MOVING_AVG("m8"),
-    NAME("n"),
+    ORDER_BOOK_REAL_TIME("i5", YFValueType.TEXT),
+    MKT_CAPITALIZATION("j1", YFValueType.MAGNITUDE),
+    MKT_CAPITALIZATION_REAL_TIME("j3", YFValueType.MAGNITUDE),
+    EBITDA("j4", YFValueType.MAGNITUDE),
+    CHG_FROM_FIFTY_TWO_WEEK_LOW("j5", YFValueType.PRICE),
+    PERCENT_CHG_FROM_FIFTY_TWO_WEEK_LOW("j6", YFValueType.PERCENT),
+    LAST_TRADE_WITH_REAL_TIME("k1", YFValueType.TEXT),
+    CHG_PERCENT_REAL_TIME("k2", YFValueType.PERCENT),
+    LAST_TRADE_SIZE("k3", YFValueType.INTEGER),
+    CHG_FROM_FIFTY_TWO_WEEK_HIGH("k4", YFValueType.PRICE),
+    PERCENT_CHG_FROM_FIFTY_TWO_WEEK_HIGH("k5", YFValueType.PERCENT),
+    LAST_TRADE_WITH_TIME("l", YFValueType.TEXT),
+    LAST_TRADE("l1", YFValueType.PRICE),
+    HIGH_LIMIT("l2", YFValueType.PRICE),
+    LOW_LIMIT("l3", YFValueType.PRICE),
+    DAYS_RANGE("m", YFValueType.TEXT),
+    DAYS_RANGE_REAL_TIME("m2", YFValueType.TEXT),
+    FIFTY_DAY_MOVING_AVG("m3", YFValueType.PRICE),
+    CHG_FROM_FIFTY_DAY_MOVING_AVG("m4", YFValueType.PRICE),
+    PERCENT_CHG_FROM_FIFTY_DAY_MOVING_AVG("m5", YFValueType.PERCENT),
+    TWO_HUNDRED_DAY_MOVING_AVG("m6", YFValueType.PRICE),
+    CHG_FROM_TWO_HUNDRED_DAY_MOVING_AVG("m7", YFValueType.PRICE),
+    PERCENT_CHG_FROM_TWO_HUNDRED_DAY_MOVING_AVG("m8", YFValueType.PERCENT),
+    NAME("n", YFValueType.TEXT),
     //Note: This API is currently not designed to work with portfolios
     //NOTES("n4"),
-    OPEN("o"),
-    PREVIOUS_CLOSE("p"),
+    OPEN("o", YFValueType.PRICE),
+    PREVIOUS_CLOSE("p", YFValueType.PRICE),
     //Note: This API is currently not designed to work with portfolios
     //PRICE_PAID("p1"),
     //Note: This API is currently not designed to work with portfolios
     //CHG_IN_PERCENT("c2"),
-    PRICE_PER_SALES("p5"),
-    PRICE_PER_BOOK("p6"),
-    EX_DIV_DATE("q"),
-    PRICE_EARNINGS_RATIO("r"),
-    DIV_PAY_DATE("r1"),
-    PRICE_EARNINGS_RATIO_REAL_TIME("r2"),
-    PEG_RATIO("r5"),
-    PRICE_PER_EPS_EST_CURRENT_YEAR("r6"),
-    PRICE_PER_EPS_EST_NEXT_YEAR("r7"),
-    SYMBOL("s"),
+    PRICE_PER_SALES("p5", YFValueType.PRICE),
+    PRICE_PER_BOOK("p6", YFValueType.PRICE),
+    EX_DIV_DATE("q", YFValueType.DATE),
+    PRICE_EARNINGS_RATIO("r", YFValueType.PRICE),
+    DIV_PAY_DATE("r1", YFValueType.DATE),
+    PRICE_EARNINGS_RATIO_REAL_TIME("r2", YFValueType.PRICE),
+    PEG_RATIO("r5", YFValueType.PRICE),
+    PRICE_PER_EPS_EST_CURRENT_YEAR("r6", YFValueType.PRICE),
+    PRICE_PER_EPS_EST_NEXT_YEAR("r7", YFValueType.PRICE),
+    SYMBOL("s", YFValueType.TEXT),
     //Note: This API is currently not designed to work with portfolios
     //SHARES_OWNED("s1"),
-    SHORT_RATIO("s7"),
-    LAST_TRADE_TIME("t1"),
-    TRADE_LINKS("t6"),
-    TICKER_TREND("t7"),
-    ONE_YEAR_TARGET_PRICE("t8"),
-    VOLUME("v"),
+    SHORT_RATIO("s7", YFValueType.PRICE),
+    LAST_TRADE_TIME("t1", YFValueType.TIME),
+    TRADE_LINKS("t6", YFValueType.TEXT),
+    TICKER_TREND("t7", YFValueType.TEXT),
+    ONE_YEAR_TARGET_PRICE("t8", YFValueType.PRICE),
+    VOLUME("v", YFValueType.INTEGER),
     //Note: This API is currently not designed to work with portfolios
     //HOLDINGS_VALUE("v1"),
     //HOLDINGS_VALUE_REAL_TIME("v7"),
-    FIFTY_TWO_WEEK_RANGE("w"),
+    FIFTY_TWO_WEEK_RANGE("w", YFValueType.TEXT),
     //Note: This API is currently not designed to work with portfolios
     //DAYS_VALUE_CHG("w1"),
     //DAYS_VALUE_CHG_REAL_TIME("w4"),
-    STOCK_EXCHG("x"),
-    DIV_YIELD("y");
+    STOCK_EXCHG("x", YFValueType.TEXT),
+    DIV_YIELD("y", YFValueType.PERCENT);
 
     private static final Map<String, YFField> codeMap = new HashMap<String, YFField>();
 
@@ -130,15 +130,24 @@ public enum YFField {
     }
 
     private final String fieldId;
+    private final YFValueType valueType;
 
-    private YFField(String fieldId) {
+    private YFField(String fieldId, YFValueType valueType) {
         this.fieldId = fieldId;
+        this.valueType = valueType;
     }
 
     public String getFieldId() {
         return fieldId;
     }
 
+    /**
+     * @return The kind of value Yahoo! Finance returns for this field
+     */
+    public YFValueType getValueType() {
+        return valueType;
+    }
+
     public static YFField getField(String fieldId) {
         return codeMap.get(fieldId);
     }
@@ -18,9 +18,17 @@
 package com.jdrlsoftware.yahoofinance;
 
 /**
+ * Thrown when the fields of a request or response do not fit together, such
+ * as a csv line whose number of tokens differs from the number of field
+ * options requested, or an unknown field option.
  *
  * @author Jim Merrell - <www.jmerrell.com>
  */
-public class YFFieldException extends Exception {
-    
+public class YFFieldException extends YFPermanentException {
+
+    private static final long serialVersionUID = 1L;
+
+    public YFFieldException(String message) {
+        super(message);
+    }
 }
@@ -0,0 +1,264 @@
+/*
+ * Copyright (C) 2012 Jim Merrell - JDRL Software
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jdrlsoftware.yahoofinance;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Decides which columns to request from Yahoo! Finance for a list of fields.
+ * <p>
+ * The fields asked for are normalized: a field listed twice is requested
+ * once, and SYMBOL is added at the front when it is missing, since quotes
+ * are keyed by it.  Fields that can be worked out from other requested
+ * fields are then computed locally instead of being fetched:
+ * <ul>
+ * <li>DAYS_RANGE from DAYS_LOW and DAYS_HIGH</li>
+ * <li>CHG_AMT from LAST_TRADE minus PREVIOUS_CLOSE</li>
+ * </ul>
+ * A derived field is only computed when all its sources are asked for
+ * anyway; otherwise fetching it is the cheaper request.  A plan cannot be
+ * changed once built and can be shared between threads, so the plans of the
+ * field lists asked for most are kept and reused.
+ *
+ * @author Jim Merrell - <www.jmerrell.com>
+ */
+public final class YFFieldPlan {
+
+    /**
+     * Most field lists kept; lists asked for after that are planned each time
+     */
+    private static final int MAX_CACHED_PLANS = 1024;
+
+    private static final ConcurrentHashMap<List<YFField>, YFFieldPlan> PLANS =
+            new ConcurrentHashMap<List<YFField>, YFFieldPlan>();
+
+    private final YFField[] fields;
+    private final YFField[] fetchFields;
+    private final YFField[] derivedFields;
+
+    /**
+     * The fetched fields followed by the derived fields, the columns of the
+     * quotes loaded with this plan
+     */
+    private final YFField[] columns;
+
+    /**
+     * For each derived field, the columns of its two sources
+     */
+    private final int[][] sourceColumns;
+
+    /**
+     * The column of SYMBOL in the csv data
+     */
+    private final int symbolColumn;
+
+    /**
+     * The field options as sent to Yahoo! Finance, such as "sl1d1"
+     */
+    private final String fieldOptionParam;
+
+    private YFFieldPlan(YFField[] fields, YFField[] fetchFields, YFField[] derivedFields) {
+        this.fields = fields;
+        this.fetchFields = fetchFields;
+        this.derivedFields = derivedFields;
+        this.columns = new YFField[fetchFields.length + derivedFields.length];
+        System.arraycopy(fetchFields, 0, columns, 0, fetchFields.length);
+        System.arraycopy(derivedFields, 0, columns, fetchFields.length, derivedFields.length);
+        this.sourceColumns = new int[derivedFields.length][];
+        for (int i = 0; i < derivedFields.length; i++) {
+            YFField[] sources = sources(derivedFields[i]);
+            sourceColumns[i] = new int[]{indexOf(fetchFields, sources[0]), indexOf(fetchFields, sources[1])};
+        }
+        this.symbolColumn = indexOf(fetchFields, YFField.SYMBOL);
+        StringBuilder sb = new StringBuilder();
+        for (YFField yff : fetchFields) {
+            sb.append(yff.getFieldId());
+        }
+        this.fieldOptionParam = sb.toString();
+    }
+
+    /**
+     * Plans the request of the given fields.
+     *
+     * @param fieldOptions The fields asked for, in any order, duplicates
+     * allowed
+     * @return The plan
+     */
+    public static YFFieldPlan getPlan(YFField[] fieldOptions) {
+        if (fieldOptions == null || fieldOptions.length == 0) {
+            throw new IllegalArgumentException("YFFieldPlan field options cannot be empty/null");
+        }
+        YFFieldPlan plan = PLANS.get(Arrays.asList(fieldOptions));
+        if (plan == null) {
+            plan = newPlan(fieldOptions);
+            if (PLANS.size() < MAX_CACHED_PLANS) {
+                // keep a copy of the list, the caller may change its array
+                PLANS.putIfAbsent(Arrays.asList(fieldOptions.clone()), plan);
+            }
+        }
+        return plan;
+    }
+
+    private static YFFieldPlan newPlan(YFField[] fieldOptions) {
+        EnumSet<YFField> requested = EnumSet.noneOf(YFField.class);
+        List<YFField> fields = new ArrayList<YFField>(fieldOptions.length + 1);
+        for (YFField yff : fieldOptions) {
+            if (yff == null) {
+                throw new IllegalArgumentException("YFFieldPlan field option cannot be null");
+            }
+            if (requested.add(yff)) {
+                fields.add(yff);
+            }
+        }
+        if (requested.add(YFField.SYMBOL)) {
+            fields.add(0, YFField.SYMBOL);
+        }
+
+        List<YFField> fetchFields = new ArrayList<YFField>(fields.size());
+        List<YFField> derivedFields = new ArrayList<YFField>(2);
+        for (YFField yff : fields) {
+            YFField[] sources = sources(yff);
+            if (sources != null && requested.contains(sources[0]) && requested.contains(sources[1])) {
+                derivedFields.add(yff);
+            } else {
+                fetchFields.add(yff);
+            }
+        }
+        return new YFFieldPlan(fields.toArray(new YFField[fields.size()]),
+                fetchFields.toArray(new YFField[fetchFields.size()]),
+                derivedFields.toArray(new YFField[derivedFields.size()]));
+    }
+
+    /**
+     * @return The two fields the given field can be computed from, or null
+     */
+    private static YFField[] sources(YFField yff) {
+        switch (yff) {
+            case DAYS_RANGE:
+                return new YFField[]{YFField.DAYS_LOW, YFField.DAYS_HIGH};
+            case CHG_AMT:
+                return new YFField[]{YFField.LAST_TRADE, YFField.PREVIOUS_CLOSE};
+            default:
+                return null;
+        }
+    }
+
+    private static int indexOf(YFField[] fields, YFField yff) {
+        for (int i = 0; i < fields.length; i++) {
+            if (fields[i] == yff) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return The fields asked for without duplicates, with SYMBOL
+     */
+    public YFField[] getFields() {
+        return fields.clone();
+    }
+
+    /**
+     * @return The fields requested from Yahoo! Finance, in the order of the
+     * csv columns
+     */
+    public YFField[] getFetchFields() {
+        return fetchFields.clone();
+    }
+
+    /**
+     * @return The fields computed locally
+     */
+    public YFField[] getDerivedFields() {
+        return derivedFields.clone();
+    }
+
+    public boolean isDerived(YFField yff) {
+        return indexOf(derivedFields, yff) >= 0;
+    }
+
+    YFField[] fetchFields() {
+        return fetchFields;
+    }
+
+    /**
+     * @return The column of SYMBOL in the csv data
+     */
+    int symbolColumn() {
+        return symbolColumn;
+    }
+
+    /**
+     * @return The fetched fields as a field option parameter, such as "sl1d1"
+     */
+    String fieldOptionParam() {
+        return fieldOptionParam;
+    }
+
+    /**
+     * @return The fetched fields followed by the derived fields
+     */
+    YFField[] columns() {
+        return columns;
+    }
+
+    /**
+     * @return The column of the first (0) or second (1) source of a derived
+     * column
+     */
+    int sourceColumn(int col, int source) {
+        return sourceColumns[col - fetchFields.length][source];
+    }
+
+    /**
+     * Computes the value of a derived column from the tokens of a line.
+     */
+    String derive(int col, YFTokenizer tokenizer) {
+        return derive(columns[col], tokenizer.getToken(sourceColumn(col, 0)), tokenizer.getToken(sourceColumn(col, 1)));
+    }
+
+    /**
+     * Computes the value of a derived field the way Yahoo! Finance formats
+     * it, such as "41.72 - 42.35" or "+0.29".
+     *
+     * @param yff The derived field
+     * @param first The value of its first source
+     * @param second The value of its second source
+     */
+    static String derive(YFField yff, String first, String second) {
+        switch (yff) {
+            case DAYS_RANGE:
+                return first + " - " + second;
+            case CHG_AMT:
+                try {
+                    BigDecimal change = new BigDecimal(first).subtract(new BigDecimal(second));
+                    return change.signum() > 0 ? "+" + change.toPlainString() : change.toPlainString();
+                } catch (NumberFormatException e) {
+                    return YFTokenizer.EMPTY_TOKEN;
+                }
+            default:
+                throw new IllegalArgumentException("YFFieldPlan field cannot be derived: " + yff);
+        }
+    }
+}
@@ -0,0 +1,303 @@
+/*
+ * Copyright (C) 2012 Jim Merrell - JDRL Software
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jdrlsoftware.yahoofinance;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An in-process stand-in for the Yahoo! Finance csv service, for running
+ * the api offline.
+ * <p>
+ * Recorded csv data is loaded per symbol with {@link #addQuote} or
+ * {@link #load}.  For each request the transport answers the way Yahoo!
+ * Finance does: one line per requested symbol holding the requested fields
+ * in the requested order.  Fields without recorded data are returned as
+ * "N/A", as are all fields of unknown symbols.  Symbols marked with
+ * {@link #addDroppedSymbol} are left out of the response, like Yahoo! Finance
+ * does for ^DJI.  A delay can be added to every response.
+ * <p>
+ * Recorded history csv files, as served by the Yahoo! Finance history
+ * service, are loaded per symbol and interval with {@link #loadHistory}.
+ * Requests to a URL ending in "table.csv" are answered with the recorded
+ * rows in the requested date range, newest first, after the csv header.
+ * History requests for symbols without recorded history get HTTP 404, as
+ * Yahoo! Finance does.
+ *
+ * @author Jim Merrell - <www.jmerrell.com>
+ */
+public class YFFixtureTransport implements YFTransport {
+
+    private final Map<String, Map<YFField, String>> quotes = new ConcurrentHashMap<String, Map<YFField, String>>();
+    private final Map<String, NavigableMap<Integer, String>> histories =
+            new ConcurrentHashMap<String, NavigableMap<Integer, String>>();
+    private final Set<String> droppedSymbols = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final AtomicLong requestCount = new AtomicLong();
+    private volatile long latencyMillis;
+
+    /**
+     * Records the values of a csv line.
+     *
+     * @param fieldOptions The fields of the line's columns, must include SYMBOL
+     * @param csvLine The recorded csv line
+     * @throws IOException if the line cannot be tokenized
+     */
+    public void addQuote(YFField[] fieldOptions, String csvLine) throws IOException {
+        YFTokenizer tokenizer = new YFTokenizer();
+        if (tokenizer.tokenize(csvLine) != fieldOptions.length) {
+            throw new IllegalArgumentException("YFFixtureTransport field option/token mismatch error");
+        }
+        Map<YFField, String> values = new EnumMap<YFField, String>(YFField.class);
+        for (int i = 0; i < fieldOptions.length; i++) {
+            values.put(fieldOptions[i], tokenizer.getToken(i));
+        }
+        String symbol = values.get(YFField.SYMBOL);
+        if (symbol == null) {
+            throw new IllegalArgumentException("YFFixtureTransport field options must include SYMBOL");
+        }
+        Map<YFField, String> existing = quotes.get(symbol);
+        if (existing != null) {
+            synchronized (existing) {
+                existing.putAll(values);
+            }
+        } else {
+            quotes.put(symbol, Collections.synchronizedMap(values));
+        }
+    }
+
+    /**
+     * Records every line of a csv file.
+     *
+     * @param fieldOptions The fields of the file's columns, must include SYMBOL
+     * @param csv The recorded csv data
+     * @throws IOException if the data cannot be read or tokenized
+     */
+    public void load(YFField[] fieldOptions, Reader csv) throws IOException {
+        BufferedReader reader = new BufferedReader(csv);
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.length() > 0) {
+                addQuote(fieldOptions, line);
+            }
+        }
+    }
+
+    /**
+     * Records the rows of a history csv file, such as
+     * "2012-03-16,32.91,33.17,32.87,32.96,54451000,32.96".  A header line
+     * starting with "Date" is skipped.
+     *
+     * @param symbol The symbol of the history
+     * @param interval The interval of the rows
+     * @param csv The recorded csv data
+     * @throws IOException if the data cannot be read or a row has no date
+     */
+    public void loadHistory(String symbol, YFHistoryInterval interval, Reader csv) throws IOException {
+        NavigableMap<Integer, String> rows = new ConcurrentSkipListMap<Integer, String>();
+        NavigableMap<Integer, String> existing = histories.putIfAbsent(symbol + "-" + interval.getIntervalId(), rows);
+        if (existing != null) {
+            rows = existing;
+        }
+        BufferedReader reader = new BufferedReader(csv);
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.length() == 0 || line.startsWith("Date")) {
+                continue;
+            }
+            int comma = line.indexOf(',');
+            int day = YFHistoryApi.parseDay(line, 0, comma < 0 ? line.length() : comma);
+            if (day == Integer.MIN_VALUE) {
+                throw new IllegalArgumentException("YFFixtureTransport history row has no date: " + line);
+            }
+            rows.put(day, line);
+        }
+    }
+
+    /**
+     * Leaves the symbol out of every response.
+     */
+    public void addDroppedSymbol(String symbol) {
+        droppedSymbols.add(symbol);
+    }
+
+    /**
+     * Sets a delay added before every response.
+     */
+    public void setLatency(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("YFFixtureTransport latency cannot be negative");
+        }
+        latencyMillis = millis;
+    }
+
+    /**
+     * @return The number of requests answered so far
+     */
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    @Override
+    public InputStream open(URL aURL) throws IOException {
+        requestCount.incrementAndGet();
+        if (aURL.getPath().endsWith("table.csv")) {
+            return openHistory(aURL);
+        }
+        String symbolParam = queryParameter(aURL, "s");
+        String fieldParam = queryParameter(aURL, "f");
+        if (symbolParam == null || fieldParam == null) {
+            throw new YFPermanentException("YFFixtureTransport missing s or f parameter in URL: " + aURL);
+        }
+        List<YFField> fields = parseFieldOptions(fieldParam);
+        delay();
+
+        StringBuilder sb = new StringBuilder();
+        for (String symbol : symbolParam.split("[+ ]")) {
+            if (symbol.length() == 0 || droppedSymbols.contains(symbol)) {
+                continue;
+            }
+            Map<YFField, String> values = quotes.get(symbol);
+            for (int i = 0; i < fields.size(); i++) {
+                YFField yff = fields.get(i);
+                String value = yff == YFField.SYMBOL ? symbol : values != null ? values.get(yff) : null;
+                if (i > 0) {
+                    sb.append(',');
+                }
+                appendValue(sb, yff, value);
+            }
+            sb.append("\r\n");
+        }
+        return new ByteArrayInputStream(sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private InputStream openHistory(URL aURL) throws IOException {
+        String symbol = queryParameter(aURL, "s");
+        YFHistoryInterval interval = YFHistoryInterval.getInterval(queryParameter(aURL, "g"));
+        int fromDay = dateParameter(aURL, "a", "b", "c");
+        int toDay = dateParameter(aURL, "d", "e", "f");
+        if (symbol == null || interval == null) {
+            throw new YFPermanentException("YFFixtureTransport missing s or g parameter in URL: " + aURL);
+        }
+        delay();
+        NavigableMap<Integer, String> rows = histories.get(symbol + "-" + interval.getIntervalId());
+        if (rows == null || fromDay > toDay) {
+            throw new YFPermanentException("YFFixtureTransport HTTP status 404 for URL: " + aURL, 404, null);
+        }
+
+        StringBuilder sb = new StringBuilder("Date,Open,High,Low,Close,Volume,Adj Close\n");
+        for (String row : rows.subMap(fromDay, true, toDay, true).descendingMap().values()) {
+            sb.append(row).append('\n');
+        }
+        return new ByteArrayInputStream(sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return The day of the month, day and year parameters, months
+     * counted from 0
+     */
+    private static int dateParameter(URL aURL, String month, String day, String year) throws IOException {
+        try {
+            return (int) YFValueType.epochDay(Integer.parseInt(queryParameter(aURL, year)),
+                    Integer.parseInt(queryParameter(aURL, month)) + 1, Integer.parseInt(queryParameter(aURL, day)));
+        } catch (NumberFormatException e) {
+            throw new YFPermanentException("YFFixtureTransport invalid date in URL: " + aURL, e);
+        }
+    }
+
+    private void delay() throws IOException {
+        if (latencyMillis > 0) {
+            try {
+                Thread.sleep(latencyMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("YFFixtureTransport request interrupted");
+            }
+        }
+    }
+
+    private static void appendValue(StringBuilder sb, YFField yff, String value) {
+        if (value == null || YFTokenizer.EMPTY_TOKEN.equals(value)) {
+            sb.append(YFTokenizer.EMPTY_TOKEN);
+        } else if (yff.getValueType().isNumeric() && yff.getValueType() != YFValueType.DATE
+                && yff.getValueType() != YFValueType.TIME) {
+            sb.append(value);
+        } else {
+            sb.append('"').append(value).append('"');
+        }
+    }
+
+    private static String queryParameter(URL aURL, String name) throws IOException {
+        String query = aURL.getQuery();
+        if (query == null) {
+            return null;
+        }
+        for (String param : query.split("&")) {
+            if (param.startsWith(name + "=")) {
+                // keep '+' as the symbol separator rather than decoding it
+                return URLDecoder.decode(param.substring(name.length() + 1).replace("+", "%2B"), "UTF-8");
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Splits a field option string such as "sl1d1" into its fields.
+     */
+    private static List<YFField> parseFieldOptions(String fieldParam) throws IOException {
+        List<YFField> fields = new ArrayList<YFField>();
+        int pos = 0;
+        while (pos < fieldParam.length()) {
+            int end = pos + 1;
+            if (end < fieldParam.length() && Character.isDigit(fieldParam.charAt(end))) {
+                end++;
+            }
+            YFField yff = YFField.getField(fieldParam.substring(pos, end));
+            if (yff == null) {
+                throw new YFFieldException("YFFixtureTransport unknown field option: " + fieldParam.substring(pos, end));
+            }
+            fields.add(yff);
+            pos = end;
+        }
+        return fields;
+    }
+
+    /**
+     * @return The symbols with recorded data
+     */
+    public Set<String> getSymbols() {
+        return new HashSet<String>(quotes.keySet());
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright (C) 2012 Jim Merrell - JDRL Software
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jdrlsoftware.yahoofinance;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Assigns symbols to nodes by consistent hashing.
+ * <p>
+ * Each node is placed on a ring of 64 bit hashes at a number of points, its
+ * virtual nodes, and a symbol is owned by the node of the first point at or
+ * after the hash of the symbol.  When a node joins it takes over about
+ * <code>1/n</code> of the symbols, all of them from the other nodes, and when
+ * one leaves only its own symbols move; the rest keep their owner.  More
+ * virtual nodes spread the symbols more evenly.
+ * <p>
+ * The ring is rebuilt when a node joins or leaves and replaced as a whole,
+ * so lookups do not lock.
+ *
+ * @author Jim Merrell - <www.jmerrell.com>
+ */
+public class YFHashRing {
+
+    public static final int DEFAULT_VIRTUAL_NODES = 160;
+
+    private final int virtualNodes;
+    private volatile Ring ring = new Ring(new long[0], new String[0], Collections.<String>emptySet());
+
+    /**
+     * The points of the ring in ascending order and the node of each.
+     */
+    private static class Ring {
+
+        final long[] points;
+        final String[] owners;
+        final Set<String> nodes;
+
+        Ring(long[] points, String[] owners, Set<String> nodes) {
+            this.points = points;
+            this.owners = owners;
+            this.nodes = nodes;
+        }
+    }
+
+    public YFHashRing() {
+        this(DEFAULT_VIRTUAL_NODES);
+    }
+
+    /**
+     * @param virtualNodes The number of points of each node on the ring
+     */
+    public YFHashRing(int virtualNodes) {
+        if (virtualNodes < 1) {
+            throw new IllegalArgumentException("YFHashRing virtual nodes must be at least 1");
+        }
+        this.virtualNodes = virtualNodes;
+    }
+
+    /**
+     * @return true if the node was added, false if it was on the ring
+     */
+    public synchronized boolean addNode(String node) {
+        if (node == null || node.length() == 0) {
+            throw new IllegalArgumentException("YFHashRing node cannot be empty/null");
+        }
+        if (ring.nodes.contains(node)) {
+            return false;
+        }
+        Set<String> nodes = new HashSet<String>(ring.nodes);
+        nodes.add(node);
+        ring = build(nodes);
+        return true;
+    }
+
+    /**
+     * @return true if the node was removed, false if it was not on the ring
+     */
+    public synchronized boolean removeNode(String node) {
+        if (!ring.nodes.contains(node)) {
+            return false;
+        }
+        Set<String> nodes = new HashSet<String>(ring.nodes);
+        nodes.remove(node);
+        ring = build(nodes);
+        return true;
+    }
+
+    public Set<String> getNodes() {
+        return ring.nodes;
+    }
+
+    /**
+     * @return A ring with the nodes of this one, which does not change when
+     * nodes are later added to or removed from this one
+     */
+    public YFHashRing copy() {
+        YFHashRing copy = new YFHashRing(virtualNodes);
+        copy.ring = ring;
+        return copy;
+    }
+
+    private Ring build(Set<String> nodes) {
+        int count = nodes.size() * virtualNodes;
+        long[] keys = new long[count];
+        String[] keyOwners = new String[count];
+        Integer[] order = new Integer[count];
+        int i = 0;
+        for (String node : nodes) {
+            for (int v = 0; v < virtualNodes; v++) {
+                keys[i] = hash(node + "#" + v);
+                keyOwners[i] = node;
+                order[i] = i;
+                i++;
+            }
+        }
+        final long[] sortKeys = keys;
+        final String[] sortOwners = keyOwners;
+        // ties between points are broken by node name so every ring built
+        // from the same nodes is the same
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                int c = Long.compare(sortKeys[a], sortKeys[b]);
+                return c != 0 ? c : sortOwners[a].compareTo(sortOwners[b]);
+            }
+        });
+        long[] points = new long[count];
+        String[] owners = new String[count];
+        for (i = 0; i < count; i++) {
+            points[i] = keys[order[i]];
+            owners[i] = keyOwners[order[i]];
+        }
+        return new Ring(points, owners, Collections.unmodifiableSet(nodes));
+    }
+
+    /**
+     * @return The node that owns the symbol, or null if the ring is empty
+     */
+    public String getOwner(String symbol) {
+        return getOwner(symbol, Collections.<String>emptySet());
+    }
+
+    /**
+     * Returns the owner of the symbol when the excluded nodes are left out,
+     * that is the node that takes over the symbol if its owner leaves.
+     *
+     * @return The node, or null if every node is excluded
+     */
+    public String getOwner(String symbol, Collection<String> excluded) {
+        if (symbol == null) {
+            throw new IllegalArgumentException("YFHashRing symbol cannot be null");
+        }
+        Ring r = ring;
+        int count = r.points.length;
+        if (count == 0) {
+            return null;
+        }
+        int start = Arrays.binarySearch(r.points, hash(symbol));
+        if (start < 0) {
+            start = -start - 1;
+        } else {
+            // the first of equal points
+            while (start > 0 && r.points[start - 1] == r.points[start]) {
+                start--;
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            String owner = r.owners[(start + i) % count];
+            if (!excluded.contains(owner)) {
+                return owner;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Splits symbols by owner.
+     *
+     * @return The symbols of each node that owns any, in the order given
+     */
+    public Map<String, List<String>> partition(String[] symbols) {
+        return partition(symbols, Collections.<String>emptySet());
+    }
+
+    /**
+     * Splits symbols by owner, leaving out the excluded nodes.
+     *
+     * @return The symbols of each node that owns any, in the order given
+     * @throws IllegalStateException if there is no node to own them
+     */
+    public Map<String, List<String>> partition(String[] symbols, Collection<String> excluded) {
+        Map<String, List<String>> parts = new LinkedHashMap<String, List<String>>();
+        for (String symbol : symbols) {
+            String owner = getOwner(symbol, excluded);
+            if (owner == null) {
+                throw new IllegalStateException("YFHashRing has no node to own symbol " + symbol);
+            }
+            List<String> part = parts.get(owner);
+            if (part == null) {
+                part = new ArrayList<String>();
+                parts.put(owner, part);
+            }
+            part.add(symbol);
+        }
+        return parts;
+    }
+
+    /**
+     * A 64 bit FNV-1a hash, mixed so that similar strings such as the
+     * virtual nodes of one node land far apart.
+     */
+    static long hash(String s) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : s.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,293 @@
+/*
+ * Copyright (C) 2012 Jim Merrell - JDRL Software
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.jdrlsoftware.yahoofinance;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * The price history of one symbol: open, high, low, close, volume and
+ * adjusted close by date, held in primitive arrays sorted oldest first.
+ * <p>
+ * Dates are stored as days since 1970-01-01.  A history also records the
+ * range of dates that was requested, which may start before its first row
+ * or end after its last, since there are no rows for days the market was
+ * closed.  A history cannot be changed once built and can be shared between
+ * threads.
+ *
+ * @author Jim Merrell - <www.jmerrell.com>
+ */
+public final class YFHistory {
+
+    private final String symbol;
+    private final YFHistoryInterval interval;
+    private final int fromDay;
+    private final int toDay;
+    private final int[] days;
+    private final double[] open;
+    private final double[] high;
+    private final double[] low;
+    private final double[] close;
+    private final long[] volume;
+    private final double[] adjClose;
+
+    YFHistory(String symbol, YFHistoryInterval interval, int fromDay, int toDay, int[] days, double[] open,
+            double[] high, double[] low, double[] close, long[] volume, double[] adjClose) {
+        this.symbol = symbol;
+        this.interval = interval;
+        this.fromDay = fromDay;
+        this.toDay = toDay;
+        this.days = days;
+        this.open = open;
+        this.high = high;
+        this.low = low;
+        this.close = close;
+        this.volume = volume;
+        this.adjClose = adjClose;
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    public YFHistoryInterval getInterval() {
+        return interval;
+    }
+
+    /**
+     * @return The first day of the range requested, in days since 1970-01-01
+     */
+    public int getFromDay() {
+        return fromDay;
+    }
+
+    /**
+     * @return The last day of the range requested, in days since 1970-01-01
+     */
+    public int getToDay() {
+        return toDay;
+    }
+
+    /**
+     * @return true if the range requested includes every day from
+     * <code>from</code> to <code>to</code>
+     */
+    public boolean covers(int from, int to) {
+        return fromDay <= from && to <= toDay;
+    }
+
+    /**
+     * @return The number of rows
+     */
+    public int size() {
+        return days.length;
+    }
+
+    /**
+     * @return The date of the row in days since 1970-01-01
+     */
+    public int getDay(int row) {
+        return days[row];
+    }
+
+    public LocalDate getDate(int row) {
+        return LocalDate.ofEpochDay(days[row]);
+    }
+
+    public double getOpen(int row) {
+        return open[row];
+    }
+
+    public double getHigh(int row) {
+        return high[row];
+    }
+
+    public double getLow(int row) {
+        return low[row];
+    }
+
+    public double getClose(int row) {
+        return close[row];
+    }
+
+    public long getVolume(int row) {
+        return volume[row];
+    }
+
+    /**
+     * @return The close adjusted for later splits and dividends
+     */
+    public double getAdjClose(int row) {
+        return adjClose[row];
+    }
+
+    /**
+     * @return The row of the day, or <code>-(insertion point) - 1</code> if
+     * there is no row for it, as <code>Arrays.binarySearch</code> does
+     */
+    public int indexOf(int day) {
+        return Arrays.binarySearch(days, day);
+    }
+
+    /**
+     * @return A copy of the closes, oldest first
+     */
+    public double[] getCloses() {
+        return close.clone();
+    }
+
+    /**
+     * @return The rows from <code>from</code> to <code>to</code>, with that
+     * as the range requested
+     */
+    public YFHistory range(int from, int to) {
+        if (from > to) {
+            throw new IllegalArgumentException("YFHistory range cannot end before it starts");
+        }
+        int start = indexOf(from);
+        start = start < 0 ? -start - 1 : start;
+        int end = indexOf(to);
+        end = end < 0 ? -end - 1 : end + 1;
+        if (start == 0 && end == days.length && from == fromDay && to == toDay) {
+            return this;
+        }
+        return new YFHistory(symbol, interval, from, to, Arrays.copyOfRange(days, start, end),
+                Arrays.copyOfRange(open, start, end), Arrays.copyOfRange(high, start, end),
+                Arrays.copyOfRange(low, start, end), Arrays.copyOfRange(close, start, end),
+                Arrays.copyOfRange(volume, start, end), Arrays.copyOfRange(adjClose, start, end));
+    }
+
+    /**
+     * Collects rows in any order and builds a <code>YFHistory</code> of
+     * them.  When two rows have the same date, the one added last is kept.
+     * A builder is not thread safe.
+     */
+    public static class Builder {
+
+        private final String symbol;
+        private final YFHistoryInterval interval;
+        private int fromDay;
+        private int toDay;
+        private int size;
+        private int[] days = new int[64];
+        private double[] open = new double[64];
+        private double[] high = new double[64];
+        private double[] low = new double[64];
+        private double[] close = new double[64];
+        private long[] volume = new long[64];
+        private double[] adjClose = new double[64];
+
+        /**
+         * @param fromDay The first day of the range requested
+         * @param toDay The last day of the range requested
+         */
+        public Builder(String symbol, YFHistoryInterval interval, int fromDay, int toDay) {
+            if (symbol == null || symbol.length() == 0) {
+                throw new IllegalArgumentException("YFHistory symbol cannot be empty/null");
+            }
+            if (interval == null) {
+                throw new IllegalArgumentException("YFHistory interval cannot be null");
+            }
+            if (fromDay > toDay) {
+                throw new IllegalArgumentException("YFHistory range cannot end before it starts");
+            }
+            this.symbol = symbol;
+            this.interval = interval;
+            this.fromDay = fromDay;
+            this.toDay = toDay;
+        }
+
+        private void grow() {
+            int capacity = days.length * 2;
+            days = Arrays.copyOf(days, capacity);
+            open = Arrays.copyOf(open, capacity);
+            high = Arrays.copyOf(high, capacity);
+            low = Arrays.copyOf(low, capacity);
+            close = Arrays.copyOf(close, capacity);
+            volume = Arrays.copyOf(volume, capacity);
+            adjClose = Arrays.copyOf(adjClose, capacity);
+        }
+
+        public Builder addRow(int day, double open, double high, double low, double close, long volume,
+                double adjClose) {
+            if (size == days.length) {
+                grow();
+            }
+            this.days[size] = day;
+            this.open[size] = open;
+            this.high[size] = high;
+            this.low[size] = low;
+            this.close[size] = close;
+            this.volume[size] = volume;
+            this.adjClose[size] = adjClose;
+            size++;
+            return this;
+        }
+
+        /**
+         * Adds the rows of a history of the same symbol, widening the range
+         * requested to include its range.
+         */
+        public Builder addAll(YFHistory history) {
+            if (!symbol.equals(history.symbol) || interval != history.interval) {
+                throw new IllegalArgumentException("YFHistory cannot add history of " + history.symbol + " "
+                        + history.interval + " to " + symbol + " " + interval);
+            }
+            fromDay = Math.min(fromDay, history.fromDay);
+            toDay = Math.max(toDay, history.toDay);
+            for (int i = 0; i < history.days.length; i++) {
+                addRow(history.days[i], history.open[i], history.high[i], history.low[i], history.close[i],
+                        history.volume[i], history.adjClose[i]);
+            }
+            return this;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public YFHistory build() {
+            // sort by day, then by the order added, so the last row of a day wins
+            long[] order = new long[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = ((long) days[i] << 32) | i;
+            }
+            Arrays.sort(order);
+            int count = 0;
+            for (int i = 0; i < size; i++) {
+                if (i == size - 1 || (int) (order[i + 1] >> 32) != (int) (order[i] >> 32)) {
+                    order[count++] = order[i];
+                }
+            }
+            YFHistory history = new YFHistory(symbol, interval, fromDay, toDay, new int[count], new double[count],
+                    new double[count], new double[count], new double[count], new long[count], new double[count]);
+            for (int i = 0; i < count; i++) {
+                int row = (int) order[i];
+                history.days[i] = days[row];
+                history.open[i] = open[row];
+                history.high[i] = high[row];
+                history.low[i] = low[row];
+                history.close[i] = close[row];
+                history.volume[i] = volume[row];
+                history.adjClose[i] = adjClose[row];
+            }
+            return history;
+        }
+    }
+}
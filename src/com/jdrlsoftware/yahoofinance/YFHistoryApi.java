@@ -0,0 +1,471 @@
+/*
+ * Copyright (C) 2012 Jim Merrell - JDRL Software
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.jdrlsoftware.yahoofinance;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Retrieves price history from the Yahoo! Finance history csv service.
+ * <p>
+ * A daily range is split into partitions of at most
+ * {@link #setPartitionDays partitionDays} days, and every partition of every
+ * symbol is fetched as its own request, at most <code>maxConnections</code>
+ * at a time.  The rows are parsed in place straight into the primitive
+ * arrays of a <code>YFHistory</code>.  Weekly and monthly history is fetched
+ * in one request per symbol, since a partition boundary would split a week
+ * or month into two rows.
+ * <p>
+ * With a <code>YFHistoryStore</code> set, the history of each symbol is kept
+ * on disk and a later call only fetches the days its range adds to the
+ * stored range.  The last stored day is fetched again, in case it was
+ * downloaded while the market was open.  Weekly and monthly history that is
+ * not fully stored is fetched again as a whole.
+ * <p>
+ * A failed request is logged and the symbol left out of the result; only if
+ * every request fails is the first failure rethrown.  A range Yahoo! Finance
+ * has no rows for, answered with HTTP 404, is taken as empty.  A
+ * <code>YFHistoryApi</code> can be shared between threads.
+ *
+ * @author Jim Merrell - <www.jmerrell.com>
+ */
+public class YFHistoryApi {
+
+    public static final String DEFAULT_BASE_URL = "http://ichart.finance.yahoo.com/table.csv";
+    public static final int DEFAULT_PARTITION_DAYS = 365;
+
+    private static final int HTTP_NOT_FOUND = 404;
+    private static final int COLUMN_COUNT = 7;
+
+    private final String baseURL;
+    private volatile YFTransport transport = YFReader.getDefaultTransport();
+    private volatile int maxConnections = YFApi.DEFAULT_MAX_CONNECTIONS;
+    private volatile int partitionDays = DEFAULT_PARTITION_DAYS;
+    private volatile YFHistoryStore store;
+
+    /**
+     * Class constructor.
+     */
+    public YFHistoryApi() {
+        this(DEFAULT_BASE_URL);
+    }
+
+    /**
+     * @param baseURL The service URL the query string is appended to
+     */
+    public YFHistoryApi(String baseURL) {
+        if (baseURL == null || baseURL.length() == 0) {
+            throw new IllegalArgumentException("YFHistoryApi base URL cannot be empty/null");
+        }
+        this.baseURL = baseURL;
+    }
+
+    /**
+     * @param baseURL The service URL the query string is appended to
+     * @param transport The transport used to fetch the csv data
+     */
+    public YFHistoryApi(String baseURL, YFTransport transport) {
+        this(baseURL);
+        setTransport(transport);
+    }
+
+    public void setTransport(YFTransport transport) {
+        if (transport == null) {
+            throw new IllegalArgumentException("YFHistoryApi transport cannot be null");
+        }
+        this.transport = transport;
+    }
+
+    public YFTransport getTransport() {
+        return transport;
+    }
+
+    /**
+     * Sets the most requests open at the same time within a call.
+     */
+    public void setMaxConnections(int maxConnections) {
+        if (maxConnections < 1) {
+            throw new IllegalArgumentException("YFHistoryApi max connections must be at least 1");
+        }
+        this.maxConnections = maxConnections;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * Sets the most days of daily history fetched by one request.
+     */
+    public void setPartitionDays(int partitionDays) {
+        if (partitionDays < 1) {
+            throw new IllegalArgumentException("YFHistoryApi partition days must be at least 1");
+        }
+        this.partitionDays = partitionDays;
+    }
+
+    public int getPartitionDays() {
+        return partitionDays;
+    }
+
+    /**
+     * @param store The store downloaded history is kept in, or null to
+     * fetch every range in full
+     */
+    public void setStore(YFHistoryStore store) {
+        this.store = store;
+    }
+
+    public YFHistoryStore getStore() {
+        return store;
+    }
+
+    /**
+     * @return The history of the symbol, or null if it could not be fetched
+     */
+    public YFHistory retrieveHistory(String tickerSymbol, LocalDate from, LocalDate to, YFHistoryInterval interval)
+            throws Exception {
+        return retrieveHistory(new String[]{tickerSymbol}, from, to, interval).get(tickerSymbol);
+    }
+
+    /**
+     * Retrieves the history of each symbol from <code>from</code> to
+     * <code>to</code>, both included.  A stored history that cannot be read,
+     * such as a truncated file, is logged and deleted, and the symbol's
+     * whole range is fetched again.
+     *
+     * @return The history of each symbol fetched, by symbol, in the order
+     * asked for
+     */
+    public Map<String, YFHistory> retrieveHistory(String[] tickerSymbols, LocalDate from, LocalDate to,
+            YFHistoryInterval interval) throws Exception {
+        if (tickerSymbols == null || tickerSymbols.length == 0) {
+            throw new IllegalArgumentException("YFHistoryApi ticker symbols cannot be empty/null");
+        }
+        if (from == null || to == null) {
+            throw new IllegalArgumentException("YFHistoryApi dates cannot be null");
+        }
+        if (from.isAfter(to)) {
+            throw new IllegalArgumentException("YFHistoryApi range cannot end before it starts");
+        }
+        if (interval == null) {
+            throw new IllegalArgumentException("YFHistoryApi interval cannot be null");
+        }
+        int fromDay = (int) from.toEpochDay();
+        int toDay = (int) to.toEpochDay();
+        YFHistoryStore historyStore = store;
+
+        Set<String> symbols = new LinkedHashSet<String>();
+        for (String symbol : tickerSymbols) {
+            if (symbol == null || symbol.length() == 0) {
+                throw new IllegalArgumentException("YFHistoryApi ticker symbol cannot be empty/null");
+            }
+            symbols.add(symbol);
+        }
+
+        // work out what each symbol is missing
+        Map<String, YFHistory> stored = new LinkedHashMap<String, YFHistory>();
+        List<Partition> partitions = new ArrayList<Partition>();
+        for (String symbol : symbols) {
+            YFHistory history = historyStore != null ? load(historyStore, symbol, interval) : null;
+            if (history == null) {
+                addPartitions(partitions, symbol, interval, fromDay, toDay);
+                continue;
+            }
+            stored.put(symbol, history);
+            if (history.covers(fromDay, toDay)) {
+                continue;
+            }
+            if (interval != YFHistoryInterval.DAILY) {
+                addPartitions(partitions, symbol, interval, Math.min(fromDay, history.getFromDay()),
+                        Math.max(toDay, history.getToDay()));
+                continue;
+            }
+            if (fromDay < history.getFromDay()) {
+                addPartitions(partitions, symbol, interval, fromDay, history.getFromDay() - 1);
+            }
+            if (toDay > history.getToDay()) {
+                addPartitions(partitions, symbol, interval, history.getToDay(), toDay);
+            }
+        }
+
+        Set<String> failedSymbols = fetchPartitions(partitions);
+
+        // merge the partitions into the stored history, newer rows first
+        Map<String, YFHistory.Builder> builders = new LinkedHashMap<String, YFHistory.Builder>();
+        for (Partition partition : partitions) {
+            if (!failedSymbols.contains(partition.symbol)) {
+                YFHistory.Builder builder = builders.get(partition.symbol);
+                if (builder == null) {
+                    builder = new YFHistory.Builder(partition.symbol, interval, fromDay, toDay);
+                    YFHistory history = stored.get(partition.symbol);
+                    if (history != null) {
+                        builder.addAll(history);
+                    }
+                    builders.put(partition.symbol, builder);
+                }
+                builder.addAll(partition.rows.build());
+            }
+        }
+
+        Map<String, YFHistory> result = new LinkedHashMap<String, YFHistory>();
+        for (String symbol : symbols) {
+            YFHistory history;
+            YFHistory.Builder builder = builders.get(symbol);
+            if (builder != null) {
+                history = builder.build();
+                if (historyStore != null) {
+                    save(historyStore, history);
+                }
+            } else if (!failedSymbols.contains(symbol)) {
+                history = stored.get(symbol);
+            } else {
+                continue;
+            }
+            result.put(symbol, history.range(fromDay, toDay));
+        }
+        return result;
+    }
+
+    /**
+     * @return The stored history of the symbol, or null if there is none or
+     * it cannot be read, in which case it is deleted
+     */
+    private static YFHistory load(YFHistoryStore historyStore, String symbol, YFHistoryInterval interval) {
+        try {
+            return historyStore.load(symbol, interval);
+        } catch (IOException e) {
+            Logger.getLogger(YFHistoryApi.class.getName()).log(Level.WARNING,
+                    "YFHistoryApi cannot read stored history of " + symbol + ", fetching it again", e);
+            historyStore.delete(symbol, interval);
+            return null;
+        }
+    }
+
+    /**
+     * Stores a history; one that cannot be written is logged, and fetched
+     * again by a later call.
+     */
+    private static void save(YFHistoryStore historyStore, YFHistory history) {
+        try {
+            historyStore.save(history);
+        } catch (IOException e) {
+            Logger.getLogger(YFHistoryApi.class.getName()).log(Level.WARNING,
+                    "YFHistoryApi cannot store history of " + history.getSymbol(), e);
+        }
+    }
+
+    /**
+     * Adds the requests of a range of one symbol, split into partitions if
+     * it is daily.
+     */
+    private void addPartitions(List<Partition> partitions, String symbol, YFHistoryInterval interval, int fromDay,
+            int toDay) {
+        int days = interval == YFHistoryInterval.DAILY ? partitionDays : Integer.MAX_VALUE;
+        for (long start = fromDay; start <= toDay; start += days) {
+            partitions.add(new Partition(symbol, interval, (int) start, (int) Math.min(toDay, start + days - 1)));
+        }
+    }
+
+    /**
+     * Fetches the partitions, at most <code>maxConnections</code> at a time.
+     *
+     * @return The symbols with a partition that failed
+     */
+    private Set<String> fetchPartitions(List<Partition> partitions) throws Exception {
+        Set<String> failedSymbols = new LinkedHashSet<String>();
+        if (partitions.isEmpty()) {
+            return failedSymbols;
+        }
+        ExecutorService executor = YFExecutors.newFixedThreadPool(Math.min(maxConnections, partitions.size()),
+                "YFHistoryApi-partition");
+        try {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>(partitions.size());
+            for (final Partition partition : partitions) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        fetchRows(partition);
+                        return null;
+                    }
+                }));
+            }
+
+            Exception firstFailure = null;
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    futures.get(i).get();
+                } catch (ExecutionException e) {
+                    Exception cause = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                    Partition partition = partitions.get(i);
+                    Logger.getLogger(YFHistoryApi.class.getName()).log(Level.WARNING,
+                            "YFHistoryApi history of " + partition.symbol + " from "
+                            + LocalDate.ofEpochDay(partition.fromDay) + " to "
+                            + LocalDate.ofEpochDay(partition.toDay) + " failed", cause);
+                    failedSymbols.add(partition.symbol);
+                    if (firstFailure == null) {
+                        firstFailure = cause;
+                    }
+                }
+            }
+            if (firstFailure != null && failedSymbols.size() == countSymbols(partitions)) {
+                throw firstFailure;
+            }
+        } finally {
+            executor.shutdownNow();
+            YFApi.awaitTermination(executor);
+        }
+        return failedSymbols;
+    }
+
+    private static int countSymbols(List<Partition> partitions) {
+        Set<String> symbols = new LinkedHashSet<String>();
+        for (Partition partition : partitions) {
+            symbols.add(partition.symbol);
+        }
+        return symbols.size();
+    }
+
+    /**
+     * Fetches the rows of one partition into its builder.
+     */
+    private void fetchRows(Partition partition) throws Exception {
+        YFReader yfReader = new YFReader(buildURL(partition), transport);
+        YFTokenizer tokenizer = new YFTokenizer();
+        CharSequence line;
+        try {
+            while ((line = yfReader.readCsvLine()) != null) {
+                int tokenCount = tokenizer.tokenize(line);
+                if (tokenCount == 0 || (line.length() > 0 && line.charAt(0) == 'D')) {
+                    // empty line or the "Date,Open,High,Low,Close,Volume,Adj Close" header
+                    continue;
+                }
+                if (tokenCount != COLUMN_COUNT) {
+                    throw new YFFieldException("YFHistoryApi column/token mismatch error: " + line);
+                }
+                int day = parseDay(line, tokenizer.getTokenStart(0), tokenizer.getTokenEnd(0));
+                if (day == Integer.MIN_VALUE) {
+                    throw new YFPermanentException("YFHistoryApi malformed date: " + line);
+                }
+                if (day < partition.fromDay || day > partition.toDay) {
+                    continue;
+                }
+                partition.rows.addRow(day, parse(tokenizer, line, 1), parse(tokenizer, line, 2),
+                        parse(tokenizer, line, 3), parse(tokenizer, line, 4),
+                        Math.round(parse(tokenizer, line, 5)), parse(tokenizer, line, 6));
+            }
+        } catch (YFException e) {
+            if (e.getStatusCode() != HTTP_NOT_FOUND) {
+                throw e;
+            }
+            // no rows in the range
+        } finally {
+            yfReader.close();
+        }
+    }
+
+    private static double parse(YFTokenizer tokenizer, CharSequence line, int column) {
+        return YFValueType.parseDecimal(line, tokenizer.getTokenStart(column), tokenizer.getTokenEnd(column));
+    }
+
+    /**
+     * Parses a "2012-03-16" date.
+     *
+     * @return The days since 1970-01-01, or Integer.MIN_VALUE if malformed
+     */
+    static int parseDay(CharSequence value, int start, int end) {
+        int year = 0;
+        int month = 0;
+        int day = 0;
+        int part = 0;
+        int digits = 0;
+        for (int pos = start; pos < end; pos++) {
+            char c = value.charAt(pos);
+            if (c >= '0' && c <= '9') {
+                if (part == 0) {
+                    year = year * 10 + (c - '0');
+                } else if (part == 1) {
+                    month = month * 10 + (c - '0');
+                } else {
+                    day = day * 10 + (c - '0');
+                }
+                digits++;
+            } else if (c == '-' && digits > 0 && part < 2) {
+                part++;
+                digits = 0;
+            } else {
+                return Integer.MIN_VALUE;
+            }
+        }
+        if (part != 2 || digits == 0 || month < 1 || month > 12 || day < 1 || day > 31) {
+            return Integer.MIN_VALUE;
+        }
+        return (int) YFValueType.epochDay(year, month, day);
+    }
+
+    private URL buildURL(Partition partition) throws MalformedURLException {
+        LocalDate from = LocalDate.ofEpochDay(partition.fromDay);
+        LocalDate to = LocalDate.ofEpochDay(partition.toDay);
+        StringBuilder sb = new StringBuilder();
+        sb.append(baseURL).append("?s=").append(YFRequestTemplate.encode(partition.symbol))
+                .append("&a=").append(from.getMonthValue() - 1)
+                .append("&b=").append(from.getDayOfMonth())
+                .append("&c=").append(from.getYear())
+                .append("&d=").append(to.getMonthValue() - 1)
+                .append("&e=").append(to.getDayOfMonth())
+                .append("&f=").append(to.getYear())
+                .append("&g=").append(partition.interval.getIntervalId())
+                .append("&ignore=.csv");
+        return new URL(sb.toString());
+    }
+
+    /**
+     * One request: a range of days of one symbol, and the rows fetched.
+     */
+    private static class Partition {
+
+        final String symbol;
+        final YFHistoryInterval interval;
+        final int fromDay;
+        final int toDay;
+        final YFHistory.Builder rows;
+
+        Partition(String symbol, YFHistoryInterval interval, int fromDay, int toDay) {
+            this.symbol = symbol;
+            this.interval = interval;
+            this.fromDay = fromDay;
+            this.toDay = toDay;
+            this.rows = new YFHistory.Builder(symbol, interval, fromDay, toDay);
+        }
+    }
+}
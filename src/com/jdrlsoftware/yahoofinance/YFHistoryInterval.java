@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2012 Jim Merrell - JDRL Software
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.jdrlsoftware.yahoofinance;
+
+/**
+ * The spacing of the rows of a <code>YFHistory</code>.  Yahoo! Finance
+ * serves history by day, week or month; intraday history is not available
+ * from the csv service.
+ *
+ * @author Jim Merrell - <www.jmerrell.com>
+ */
+public enum YFHistoryInterval {
+
+    DAILY("d"),
+    /**
+     * Rows dated the first trading day of each week
+     */
+    WEEKLY("w"),
+    /**
+     * Rows dated the first trading day of each month
+     */
+    MONTHLY("m");
+
+    private final String intervalId;
+
+    private YFHistoryInterval(String intervalId) {
+        this.intervalId = intervalId;
+    }
+
+    /**
+     * @return The value of the "g" parameter of the request
+     */
+    public String getIntervalId() {
+        return intervalId;
+    }
+
+    /**
+     * @return The interval of a "g" parameter, or null
+     */
+    public static YFHistoryInterval getInterval(String intervalId) {
+        for (YFHistoryInterval interval : values()) {
+            if (interval.intervalId.equals(intervalId)) {
+                return interval;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2012 Jim Merrell - JDRL Software
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.jdrlsoftware.yahoofinance;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Keeps downloaded <code>YFHistory</code> on disk, one file per symbol and
+ * interval, so that a later download only fetches the days it is missing.
+ * <p>
+ * A file holds a header with the symbol, the interval and the range of days
+ * downloaded, followed by each column of the history as an array of
+ * primitives.  A history is written to a temporary file that then replaces
+ * the old file, so a reader never sees a partly written file.  A store can
+ * be shared between threads.
+ *
+ * @author Jim Merrell - <www.jmerrell.com>
+ */
+public class YFHistoryStore {
+
+    static final int MAGIC = 0x59464831; // "YFH1"
+    static final String FILE_SUFFIX = ".yfh";
+
+    private final File directory;
+
+    /**
+     * @param directory The store directory, created if missing
+     */
+    public YFHistoryStore(File directory) throws IOException {
+        if (directory == null) {
+            throw new IllegalArgumentException("YFHistoryStore directory cannot be null");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("YFHistoryStore cannot create directory: " + directory);
+        }
+        this.directory = directory;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return The file of the history, named after the URL encoded symbol
+     */
+    File getFile(String symbol, YFHistoryInterval interval) {
+        return new File(directory, YFRequestTemplate.encode(symbol) + "-" + interval.getIntervalId() + FILE_SUFFIX);
+    }
+
+    /**
+     * @return The stored history, or null if there is none
+     * @throws IOException if the file cannot be read or is not a history of
+     * the symbol
+     */
+    public YFHistory load(String symbol, YFHistoryInterval interval) throws IOException {
+        File file = getFile(symbol, interval);
+        if (!file.isFile()) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("YFHistoryStore not a history file: " + file);
+            }
+            byte[] symbolBytes = new byte[buffer.getShort()];
+            buffer.get(symbolBytes);
+            String storedSymbol = new String(symbolBytes, StandardCharsets.UTF_8);
+            YFHistoryInterval storedInterval = YFHistoryInterval.getInterval(String.valueOf((char) buffer.get()));
+            if (!symbol.equals(storedSymbol) || storedInterval != interval) {
+                throw new IOException("YFHistoryStore file " + file + " holds " + storedSymbol + " " + storedInterval);
+            }
+            int fromDay = buffer.getInt();
+            int toDay = buffer.getInt();
+            int count = buffer.getInt();
+            if (count < 0 || fromDay > toDay) {
+                throw new IOException("YFHistoryStore corrupt header in file: " + file);
+            }
+            int[] days = new int[count];
+            double[] open = new double[count];
+            double[] high = new double[count];
+            double[] low = new double[count];
+            double[] close = new double[count];
+            long[] volume = new long[count];
+            double[] adjClose = new double[count];
+            buffer.asIntBuffer().get(days);
+            buffer.position(buffer.position() + count * 4);
+            readDoubles(buffer, open);
+            readDoubles(buffer, high);
+            readDoubles(buffer, low);
+            readDoubles(buffer, close);
+            buffer.asLongBuffer().get(volume);
+            buffer.position(buffer.position() + count * 8);
+            readDoubles(buffer, adjClose);
+            return new YFHistory(symbol, interval, fromDay, toDay, days, open, high, low, close, volume, adjClose);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("YFHistoryStore truncated file: " + file, e);
+        }
+    }
+
+    private static void readDoubles(ByteBuffer buffer, double[] values) {
+        buffer.asDoubleBuffer().get(values);
+        buffer.position(buffer.position() + values.length * 8);
+    }
+
+    /**
+     * Writes a history, replacing the stored history of its symbol and
+     * interval.
+     */
+    public void save(YFHistory history) throws IOException {
+        byte[] symbolBytes = history.getSymbol().getBytes(StandardCharsets.UTF_8);
+        int count = history.size();
+        ByteBuffer buffer = ByteBuffer.allocate(4 + 2 + symbolBytes.length + 1 + 12 + count * (4 + 6 * 8));
+        buffer.putInt(MAGIC);
+        buffer.putShort((short) symbolBytes.length);
+        buffer.put(symbolBytes);
+        buffer.put((byte) history.getInterval().getIntervalId().charAt(0));
+        buffer.putInt(history.getFromDay());
+        buffer.putInt(history.getToDay());
+        buffer.putInt(count);
+        for (int i = 0; i < count; i++) {
+            buffer.putInt(history.getDay(i));
+        }
+        for (int i = 0; i < count; i++) {
+            buffer.putDouble(history.getOpen(i));
+        }
+        for (int i = 0; i < count; i++) {
+            buffer.putDouble(history.getHigh(i));
+        }
+        for (int i = 0; i < count; i++) {
+            buffer.putDouble(history.getLow(i));
+        }
+        for (int i = 0; i < count; i++) {
+            buffer.putDouble(history.getClose(i));
+        }
+        for (int i = 0; i < count; i++) {
+            buffer.putLong(history.getVolume(i));
+        }
+        for (int i = 0; i < count; i++) {
+            buffer.putDouble(history.getAdjClose(i));
+        }
+        buffer.flip();
+
+        File file = getFile(history.getSymbol(), history.getInterval());
+        File temp = File.createTempFile(file.getName(), ".tmp", directory);
+        try {
+            FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            try {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+            } finally {
+                channel.close();
+            }
+            try {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            temp.delete();
+        }
+    }
+
+    /**
+     * Removes the stored history of the symbol.
+     *
+     * @return true if there was one
+     */
+    public boolean delete(String symbol, YFHistoryInterval interval) {
+        return getFile(symbol, interval).delete();
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2012 Jim Merrell - JDRL Software
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jdrlsoftware.yahoofinance;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.ProxySelector;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * The default <code>YFTransport</code>, built on
+ * <code>java.net.http.HttpClient</code>.
+ * <p>
+ * The client keeps a pool of open connections that are reused by later
+ * requests to the same host, so the TCP and TLS setup is paid once instead
+ * of on every call.  HTTP/2 is used where the server supports it, letting
+ * concurrent requests share one connection.  Responses are requested gzip
+ * compressed.  Settings take effect for requests made after they are
+ * changed.  URLs that are not http or https are opened with
+ * <code>URL.openStream()</code>.
+ * <p>
+ * Failed requests throw a <code>YFTransientException</code> when trying
+ * again may succeed: timeouts, connection failures, HTTP 429 and 5xx
+ * responses.  Other HTTP errors throw a <code>YFPermanentException</code>.
+ *
+ * @author Jim Merrell - <www.jmerrell.com>
+ */
+public class YFHttpTransport implements YFTransport {
+
+    public static final long DEFAULT_CONNECT_TIMEOUT_MILLIS = 10000;
+    public static final long DEFAULT_REQUEST_TIMEOUT_MILLIS = 30000;
+
+    private static final int HTTP_OK = 200;
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+    private static final int HTTP_SERVER_ERROR = 500;
+
+    private volatile long connectTimeoutMillis = DEFAULT_CONNECT_TIMEOUT_MILLIS;
+    private volatile long requestTimeoutMillis = DEFAULT_REQUEST_TIMEOUT_MILLIS;
+    private volatile boolean gzip = true;
+    private volatile HttpClient.Version version = HttpClient.Version.HTTP_2;
+    private volatile ProxySelector proxySelector;
+    private HttpClient client;
+
+    /**
+     * Sets how long to wait for a connection to be established.
+     */
+    public void setConnectTimeout(long millis) {
+        if (millis <= 0) {
+            throw new IllegalArgumentException("YFHttpTransport connect timeout must be positive");
+        }
+        connectTimeoutMillis = millis;
+        resetClient();
+    }
+
+    public long getConnectTimeout() {
+        return connectTimeoutMillis;
+    }
+
+    /**
+     * Sets how long to wait for the response to start once the request is
+     * sent.
+     */
+    public void setRequestTimeout(long millis) {
+        if (millis <= 0) {
+            throw new IllegalArgumentException("YFHttpTransport request timeout must be positive");
+        }
+        requestTimeoutMillis = millis;
+    }
+
+    public long getRequestTimeout() {
+        return requestTimeoutMillis;
+    }
+
+    /**
+     * @param gzip true to ask for gzip compressed responses
+     */
+    public void setGzip(boolean gzip) {
+        this.gzip = gzip;
+    }
+
+    public boolean isGzip() {
+        return gzip;
+    }
+
+    /**
+     * Sets the preferred HTTP version.  With HTTP_2 the client falls back to
+     * HTTP/1.1 for servers that do not support HTTP/2.
+     */
+    public void setVersion(HttpClient.Version version) {
+        if (version == null) {
+            throw new IllegalArgumentException("YFHttpTransport version cannot be null");
+        }
+        this.version = version;
+        resetClient();
+    }
+
+    /**
+     * @param proxySelector The proxies to use, or null for the system default
+     */
+    public void setProxySelector(ProxySelector proxySelector) {
+        this.proxySelector = proxySelector;
+        resetClient();
+    }
+
+    private synchronized void resetClient() {
+        client = null;
+    }
+
+    private synchronized HttpClient getClient() {
+        if (client == null) {
+            HttpClient.Builder builder = HttpClient.newBuilder()
+                    .version(version)
+                    .connectTimeout(Duration.ofMillis(connectTimeoutMillis))
+                    .followRedirects(HttpClient.Redirect.NORMAL);
+            if (proxySelector != null) {
+                builder.proxy(proxySelector);
+            }
+            client = builder.build();
+        }
+        return client;
+    }
+
+    @Override
+    public InputStream open(URL aURL) throws IOException {
+        String protocol = aURL.getProtocol();
+        if (!"http".equals(protocol) && !"https".equals(protocol)) {
+            return aURL.openStream();
+        }
+
+        HttpRequest.Builder request;
+        try {
+            request = HttpRequest.newBuilder(aURL.toURI())
+                    .timeout(Duration.ofMillis(requestTimeoutMillis))
+                    .GET();
+        } catch (URISyntaxException e) {
+            throw new YFPermanentException("YFHttpTransport invalid URL: " + aURL, e);
+        } catch (IllegalArgumentException e) {
+            throw new YFPermanentException("YFHttpTransport invalid URL: " + aURL, e);
+        }
+        if (gzip) {
+            request.header("Accept-Encoding", "gzip");
+        }
+
+        HttpResponse<InputStream> response;
+        try {
+            response = getClient().send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("YFHttpTransport request interrupted: " + aURL);
+        } catch (IOException e) {
+            throw new YFTransientException("YFHttpTransport request failed for URL: " + aURL, e);
+        }
+
+        InputStream body = response.body();
+        int status = response.statusCode();
+        if (status != HTTP_OK) {
+            body.close();
+            String message = "YFHttpTransport HTTP status " + status + " for URL: " + aURL;
+            if (status == HTTP_TOO_MANY_REQUESTS || status >= HTTP_SERVER_ERROR) {
+                throw new YFTransientException(message, status, retryAfterMillis(response), null);
+            }
+            throw new YFPermanentException(message, status, null);
+        }
+        if ("gzip".equalsIgnoreCase(response.headers().firstValue("Content-Encoding").orElse(""))) {
+            return new GZIPInputStream(body);
+        }
+        return body;
+    }
+
+    /**
+     * @return The wait asked for by a Retry-After header in seconds, -1 if
+     * there is none or it is a date
+     */
+    private static long retryAfterMillis(HttpResponse<?> response) {
+        String retryAfter = response.headers().firstValue("Retry-After").orElse(null);
+        if (retryAfter != null) {
+            try {
+                return Long.parseLong(retryAfter.trim()) * 1000;
+            } catch (NumberFormatException e) {
+                // an HTTP date, not worth parsing
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,431 @@
+/*
+ * Copyright (C) 2012 Jim Merrell - JDRL Software
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jdrlsoftware.yahoofinance;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Replays the quotes written by a <code>YFJournalWriter</code>, in the order
+ * they were written.
+ * <p>
+ * Each segment is memory mapped and read in place: {@link #next()} moves to
+ * the next quote record and only notes where its values are, so stepping
+ * through the journal does not copy or allocate.  The values of the current
+ * record are read with {@link #getDouble}, {@link #getLong} and
+ * {@link #getString}, or turned into a <code>YFQuote</code> with
+ * {@link #toQuote()}.  {@link #readSnapshot} rebuilds the latest quotes up to
+ * a given time as a <code>YFColumnarSnapshot</code>.  A record cut short at
+ * the end of a segment, as left by a writer that was not closed, ends the
+ * segment.  A reader is not thread safe.
+ *
+ * @author Jim Merrell - <www.jmerrell.com>
+ */
+public class YFJournalReader implements Closeable {
+
+    private static final YFField[] ALL_FIELDS = YFField.values();
+
+    private final File[] segments;
+    private int segmentIdx = -1;
+    private MappedByteBuffer buffer;
+
+    /**
+     * The current segment's fields by their position in its header, null
+     * for field ids this version does not know
+     */
+    private YFField[] segmentFields;
+    private int maskWords;
+    private String[] symbols = new String[1024];
+
+    private String symbol;
+    private long timestamp;
+    private int recordStart;
+
+    /**
+     * Position in the buffer of the value of each field of the current
+     * record, by field ordinal, -1 for fields the record does not hold
+     */
+    private final int[] valuePositions = new int[ALL_FIELDS.length];
+
+    /**
+     * @param directory A journal directory written by a
+     * <code>YFJournalWriter</code>
+     */
+    public YFJournalReader(File directory) throws IOException {
+        if (directory == null || !directory.isDirectory()) {
+            throw new IllegalArgumentException("YFJournalReader directory does not exist: " + directory);
+        }
+        this.segments = listSegments(directory);
+        Arrays.fill(valuePositions, -1);
+    }
+
+    static File segmentFile(File directory, int number) {
+        return new File(directory, String.format("%s%08d%s", YFJournalWriter.SEGMENT_PREFIX, number,
+                YFJournalWriter.SEGMENT_SUFFIX));
+    }
+
+    static int segmentNumber(File segment) {
+        String name = segment.getName();
+        return Integer.parseInt(name.substring(YFJournalWriter.SEGMENT_PREFIX.length(),
+                name.length() - YFJournalWriter.SEGMENT_SUFFIX.length()));
+    }
+
+    /**
+     * @return The segment files of the journal, oldest first
+     */
+    static File[] listSegments(File directory) {
+        File[] files = directory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                String name = file.getName();
+                return file.isFile() && name.matches(YFJournalWriter.SEGMENT_PREFIX + "\\d{8}"
+                        + YFJournalWriter.SEGMENT_SUFFIX.replace(".", "\\."));
+            }
+        });
+        if (files == null) {
+            return new File[0];
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File f1, File f2) {
+                return Integer.compare(segmentNumber(f1), segmentNumber(f2));
+            }
+        });
+        return files;
+    }
+
+    /**
+     * Moves to the next quote record.
+     *
+     * @return false if there are no more records
+     * @throws IOException if a segment cannot be read or is not a journal
+     * segment
+     */
+    public boolean next() throws IOException {
+        while (true) {
+            if (buffer != null && buffer.hasRemaining()) {
+                int start = buffer.position();
+                try {
+                    if (readRecord()) {
+                        return true;
+                    }
+                    continue;
+                } catch (BufferUnderflowException e) {
+                    // incomplete record at the end of the segment
+                    buffer.position(start);
+                } catch (IndexOutOfBoundsException e) {
+                    buffer.position(start);
+                }
+            }
+            if (!openSegment(segmentIdx + 1)) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Reads one record.
+     *
+     * @return true if it was a quote record, false for a symbol record
+     */
+    private boolean readRecord() throws IOException {
+        int start = buffer.position();
+        byte type = buffer.get();
+        if (type == YFJournalWriter.SYMBOL_RECORD) {
+            int id = buffer.getInt();
+            int length = buffer.getShort() & 0xffff;
+            String name = YFSymbolDictionary.getDefault().intern(decode(buffer.position(), length));
+            buffer.position(buffer.position() + length);
+            if (id >= symbols.length) {
+                symbols = Arrays.copyOf(symbols, Math.max(id + 1, symbols.length * 2));
+            }
+            symbols[id] = name;
+            return false;
+        }
+        if (type != YFJournalWriter.QUOTE_RECORD) {
+            throw new IOException("YFJournalReader corrupt record at " + start + " of " + segments[segmentIdx]);
+        }
+        int symbolId = buffer.getInt();
+        long recordTimestamp = buffer.getLong();
+        Arrays.fill(valuePositions, -1);
+        int[] positions = valuePositions;
+        int maskStart = buffer.position();
+        int pos = maskStart + maskWords * 8;
+        for (int word = 0; word < maskWords; word++) {
+            long bits = buffer.getLong(maskStart + word * 8);
+            while (bits != 0) {
+                int idx = word * 64 + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                YFField yff = idx < segmentFields.length ? segmentFields[idx] : null;
+                if (yff != null) {
+                    positions[yff.ordinal()] = pos;
+                }
+                pos = skipValue(pos);
+            }
+        }
+        if (pos > buffer.limit()) {
+            throw new BufferUnderflowException();
+        }
+        buffer.position(pos);
+        symbol = symbols[symbolId];
+        timestamp = recordTimestamp;
+        recordStart = start;
+        return true;
+    }
+
+    private int skipValue(int pos) {
+        byte tag = buffer.get(pos);
+        switch (tag) {
+            case YFJournalWriter.NA_VALUE:
+                return pos + 1;
+            case YFJournalWriter.DOUBLE_VALUE:
+            case YFJournalWriter.LONG_VALUE:
+                return pos + 1 + 8;
+            default:
+                return pos + 1 + 2 + (buffer.getShort(pos + 1) & 0xffff);
+        }
+    }
+
+    private boolean openSegment(int idx) throws IOException {
+        buffer = null;
+        if (idx >= segments.length) {
+            segmentIdx = segments.length;
+            return false;
+        }
+        segmentIdx = idx;
+        FileChannel channel = FileChannel.open(segments[idx].toPath(), StandardOpenOption.READ);
+        try {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            channel.close();
+        }
+        if (buffer.remaining() < 6) {
+            // empty segment of a writer that failed while starting it
+            buffer = null;
+            return true;
+        }
+        if (buffer.getInt() != YFJournalWriter.MAGIC) {
+            throw new IOException("YFJournalReader not a journal segment: " + segments[idx]);
+        }
+        int fieldCount = buffer.getShort();
+        segmentFields = new YFField[fieldCount];
+        for (int i = 0; i < fieldCount; i++) {
+            int length = buffer.get();
+            byte[] id = new byte[length];
+            buffer.get(id);
+            segmentFields[i] = YFField.getField(new String(id, StandardCharsets.US_ASCII));
+        }
+        maskWords = (fieldCount + 63) / 64;
+        Arrays.fill(symbols, null);
+        return true;
+    }
+
+    private String decode(int pos, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(pos + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return The symbol of the current record
+     */
+    public String getSymbol() {
+        return symbol;
+    }
+
+    /**
+     * @return The time the current record was fetched, in milliseconds since
+     * the epoch
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public boolean containsField(YFField yff) {
+        return valuePositions[yff.ordinal()] >= 0;
+    }
+
+    /**
+     * @return The value of a field of the current record as a double, or
+     * <code>Double.NaN</code> if not available
+     */
+    public double getDouble(YFField yff) {
+        int pos = valuePositions[yff.ordinal()];
+        if (pos < 0) {
+            return Double.NaN;
+        }
+        switch (buffer.get(pos)) {
+            case YFJournalWriter.DOUBLE_VALUE:
+                return buffer.getDouble(pos + 1);
+            case YFJournalWriter.LONG_VALUE:
+                return buffer.getLong(pos + 1);
+            case YFJournalWriter.TEXT_VALUE:
+                YFValueType valueType = yff.getValueType();
+                if (valueType == YFValueType.DATE || valueType == YFValueType.TIME) {
+                    long value = getLong(yff);
+                    return value == YFValueType.NA_LONG ? Double.NaN : value;
+                }
+                return valueType.parseDouble(getString(yff));
+            default:
+                return Double.NaN;
+        }
+    }
+
+    /**
+     * @return The value of a field of the current record as a long, or
+     * <code>YFValueType.NA_LONG</code> if not available
+     */
+    public long getLong(YFField yff) {
+        int pos = valuePositions[yff.ordinal()];
+        if (pos < 0) {
+            return YFValueType.NA_LONG;
+        }
+        switch (buffer.get(pos)) {
+            case YFJournalWriter.DOUBLE_VALUE:
+                return Math.round(buffer.getDouble(pos + 1));
+            case YFJournalWriter.LONG_VALUE:
+                return buffer.getLong(pos + 1);
+            case YFJournalWriter.TEXT_VALUE:
+                return yff.getValueType().parseLong(getString(yff));
+            default:
+                return YFValueType.NA_LONG;
+        }
+    }
+
+    /**
+     * @return The value of a field of the current record as the csv text, or
+     * null if the record does not hold the field
+     */
+    public String getString(YFField yff) {
+        int pos = valuePositions[yff.ordinal()];
+        if (pos < 0) {
+            return null;
+        }
+        switch (buffer.get(pos)) {
+            case YFJournalWriter.DOUBLE_VALUE:
+                return Double.toString(buffer.getDouble(pos + 1));
+            case YFJournalWriter.LONG_VALUE:
+                return Long.toString(buffer.getLong(pos + 1));
+            case YFJournalWriter.TEXT_VALUE:
+                return decode(pos + 3, buffer.getShort(pos + 1) & 0xffff);
+            default:
+                return YFTokenizer.EMPTY_TOKEN;
+        }
+    }
+
+    /**
+     * @return The current record as a quote
+     */
+    public YFQuote toQuote() {
+        EnumMap<YFField, YFDataItem> dataItemMap = new EnumMap<YFField, YFDataItem>(YFField.class);
+        for (YFField yff : ALL_FIELDS) {
+            if (valuePositions[yff.ordinal()] >= 0) {
+                dataItemMap.put(yff, new YFDataItem(yff, getString(yff)));
+            }
+        }
+        return new YFQuote(symbol, dataItemMap);
+    }
+
+    /**
+     * Replays the remaining records as quotes.
+     *
+     * @param listener Receives the quotes in the order they were written, and
+     * can stop the replay by returning false
+     */
+    public void replay(YFQuoteListener listener) throws IOException {
+        while (next()) {
+            if (!listener.quoteReceived(toQuote())) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Reads the remaining records up to a time and rebuilds the latest
+     * quote of each symbol as a columnar snapshot.  Only the values of the
+     * last record of each symbol are read.
+     *
+     * @param fieldOptions The fields of the snapshot, must include SYMBOL
+     * @param untilMillis Records fetched after this time are ignored
+     * @return The snapshot, after which the reader is at the end of the
+     * journal
+     */
+    public YFColumnarSnapshot readSnapshot(YFField[] fieldOptions, long untilMillis) throws IOException {
+        // first find the last record of each symbol, as segment and position
+        Map<String, long[]> latest = new LinkedHashMap<String, long[]>();
+        while (next()) {
+            if (timestamp > untilMillis) {
+                continue;
+            }
+            long[] location = latest.get(symbol);
+            if (location == null) {
+                location = new long[2];
+                latest.put(symbol, location);
+            }
+            location[0] = segmentIdx;
+            location[1] = recordStart;
+        }
+
+        // then read only those records, one segment at a time
+        List<Map.Entry<String, long[]>> records = new ArrayList<Map.Entry<String, long[]>>(latest.entrySet());
+        Collections.sort(records, new Comparator<Map.Entry<String, long[]>>() {
+            @Override
+            public int compare(Map.Entry<String, long[]> e1, Map.Entry<String, long[]> e2) {
+                int c = Long.compare(e1.getValue()[0], e2.getValue()[0]);
+                return c != 0 ? c : Long.compare(e1.getValue()[1], e2.getValue()[1]);
+            }
+        });
+        YFColumnarSnapshot.Builder builder = new YFColumnarSnapshot.Builder(fieldOptions, records.size());
+        for (Map.Entry<String, long[]> record : records) {
+            int idx = (int) record.getValue()[0];
+            if (idx != segmentIdx) {
+                openSegment(idx);
+            }
+            buffer.position((int) record.getValue()[1]);
+            readRecord();
+            symbol = record.getKey();
+            builder.addQuote(toQuote());
+        }
+        close();
+        return builder.build();
+    }
+
+    @Override
+    public void close() {
+        buffer = null;
+        segmentIdx = segments.length;
+    }
+}
@@ -0,0 +1,327 @@
+/*
+ * Copyright (C) 2012 Jim Merrell - JDRL Software
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jdrlsoftware.yahoofinance;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Appends fetched quotes to an on-disk journal, to be replayed later with a
+ * <code>YFJournalReader</code>.
+ * <p>
+ * The journal is a directory of segment files, each written once from start
+ * to end.  A new segment is started when the current one reaches the segment
+ * size, and every time a writer is opened, so existing segments are never
+ * modified.  Each segment starts with a header listing the field ids, so a
+ * segment stays readable if <code>YFField</code> changes.
+ * <p>
+ * A segment holds two kinds of records.  A symbol record assigns a symbol its
+ * id within the segment the first time the symbol is written, since ids of
+ * the <code>YFSymbolDictionary</code> only hold for the running process.  A quote
+ * record holds the symbol id, the fetch time, a bitmask of the fields present
+ * and the value of each present field.  Values are stored as a double or a
+ * long when that reproduces the csv text exactly, and as UTF-8 text
+ * otherwise.  Records are buffered; {@link #flush()} writes them to disk.  A
+ * writer can be shared between threads.
+ *
+ * @author Jim Merrell - <www.jmerrell.com>
+ */
+public class YFJournalWriter implements Closeable {
+
+    public static final long DEFAULT_SEGMENT_SIZE = 64L * 1024 * 1024;
+
+    static final int MAGIC = 0x59464a31; // "YFJ1"
+    static final String SEGMENT_PREFIX = "yfjournal-";
+    static final String SEGMENT_SUFFIX = ".dat";
+
+    static final byte SYMBOL_RECORD = 1;
+    static final byte QUOTE_RECORD = 2;
+
+    static final byte NA_VALUE = 0;
+    static final byte DOUBLE_VALUE = 1;
+    static final byte LONG_VALUE = 2;
+    static final byte TEXT_VALUE = 3;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final YFField[] ALL_FIELDS = YFField.values();
+    private static final int MASK_WORDS = (ALL_FIELDS.length + 63) / 64;
+
+    private final File directory;
+    private final long segmentSize;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final long[] mask = new long[MASK_WORDS];
+
+    /**
+     * The value of each field of the quote being appended, by ordinal
+     */
+    private final CharSequence[] valueChars = new CharSequence[ALL_FIELDS.length];
+    private final int[] valueStarts = new int[ALL_FIELDS.length];
+    private final int[] valueEnds = new int[ALL_FIELDS.length];
+    private final YFQuote.ValueVisitor valueCollector = new YFQuote.ValueVisitor() {
+        @Override
+        public void value(YFField yff, CharSequence chars, int start, int end) {
+            int ordinal = yff.ordinal();
+            mask[ordinal >> 6] |= 1L << ordinal;
+            valueChars[ordinal] = chars;
+            valueStarts[ordinal] = start;
+            valueEnds[ordinal] = end;
+        }
+    };
+
+    /**
+     * Id in the current segment of each symbol by its id in the default
+     * <code>YFSymbolDictionary</code>, -1 if not yet written to the segment
+     */
+    private int[] segmentSymbolIds = new int[1024];
+    private int segmentSymbolCount;
+    private int segmentNumber;
+    private FileChannel channel;
+    private long segmentPosition;
+    private boolean closed;
+
+    public YFJournalWriter(File directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * @param directory The journal directory, created if missing
+     * @param segmentSize Size in bytes after which a new segment is started
+     */
+    public YFJournalWriter(File directory, long segmentSize) throws IOException {
+        if (directory == null) {
+            throw new IllegalArgumentException("YFJournalWriter directory cannot be null");
+        }
+        if (segmentSize < BUFFER_SIZE || segmentSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("YFJournalWriter segment size must be between " + BUFFER_SIZE
+                    + " and " + Integer.MAX_VALUE);
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("YFJournalWriter cannot create directory: " + directory);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        for (File segment : YFJournalReader.listSegments(directory)) {
+            segmentNumber = Math.max(segmentNumber, YFJournalReader.segmentNumber(segment));
+        }
+    }
+
+    /**
+     * Appends a quote to the journal.
+     *
+     * @param quote The quote to write
+     * @param timestamp The time the quote was fetched, in milliseconds since
+     * the epoch
+     * @throws IOException if the journal cannot be written
+     */
+    public synchronized void append(YFQuote quote, long timestamp) throws IOException {
+        if (closed) {
+            throw new IOException("YFJournalWriter is closed");
+        }
+        if (channel == null || segmentPosition + buffer.position() >= segmentSize) {
+            startSegment();
+        }
+        int symbolId = symbolId(quote);
+
+        for (int i = 0; i < MASK_WORDS; i++) {
+            mask[i] = 0;
+        }
+        // only the fields the quote holds, read from its csv line if lazy
+        quote.visitValues(valueCollector);
+        int valueBytes = 0;
+        for (int i = 0; i < MASK_WORDS; i++) {
+            for (long bits = mask[i]; bits != 0; bits &= bits - 1) {
+                int ordinal = (i << 6) + Long.numberOfTrailingZeros(bits);
+                valueBytes += 1 + 8 + 2 + (valueEnds[ordinal] - valueStarts[ordinal]) * 3;
+            }
+        }
+        ensureRemaining(1 + 4 + 8 + MASK_WORDS * 8 + valueBytes);
+        buffer.put(QUOTE_RECORD);
+        buffer.putInt(symbolId);
+        buffer.putLong(timestamp);
+        for (int i = 0; i < MASK_WORDS; i++) {
+            buffer.putLong(mask[i]);
+        }
+        for (int i = 0; i < MASK_WORDS; i++) {
+            for (long bits = mask[i]; bits != 0; bits &= bits - 1) {
+                int ordinal = (i << 6) + Long.numberOfTrailingZeros(bits);
+                putValue(ALL_FIELDS[ordinal], valueChars[ordinal], valueStarts[ordinal], valueEnds[ordinal]);
+                // do not keep the csv line after the quote is written
+                valueChars[ordinal] = null;
+            }
+        }
+    }
+
+    /**
+     * Writes a value with the most compact encoding that gives back the
+     * same text.
+     */
+    private void putValue(YFField yff, CharSequence chars, int start, int end) {
+        if (chars == null || textEquals(chars, start, end, YFTokenizer.EMPTY_TOKEN)) {
+            buffer.put(NA_VALUE);
+            return;
+        }
+        YFValueType valueType = yff.getValueType();
+        if (valueType == YFValueType.INTEGER || valueType == YFValueType.PRICE) {
+            // parsed as YFDataItem parses it
+            double doubleValue = valueType.parseDouble(chars, start, end);
+            if (!Double.isNaN(doubleValue)) {
+                long longValue = Math.round(doubleValue);
+                if (textEquals(chars, start, end, Long.toString(longValue))) {
+                    buffer.put(LONG_VALUE);
+                    buffer.putLong(longValue);
+                    return;
+                }
+                if (textEquals(chars, start, end, Double.toString(doubleValue))) {
+                    buffer.put(DOUBLE_VALUE);
+                    buffer.putDouble(doubleValue);
+                    return;
+                }
+            }
+        }
+        putText(chars, start, end);
+    }
+
+    private static boolean textEquals(CharSequence chars, int start, int end, String text) {
+        if (end - start != text.length()) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (chars.charAt(i) != text.charAt(i - start)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void putText(CharSequence chars, int start, int end) {
+        int length = Math.min(end - start, 0xffff);
+        for (int i = start; i < start + length; i++) {
+            if (chars.charAt(i) >= 0x80) {
+                putText(chars.subSequence(start, end).toString());
+                return;
+            }
+        }
+        // ascii, one byte per char
+        buffer.put(TEXT_VALUE);
+        buffer.putShort((short) length);
+        for (int i = start; i < start + length; i++) {
+            buffer.put((byte) chars.charAt(i));
+        }
+    }
+
+    private void putText(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buffer.put(TEXT_VALUE);
+        buffer.putShort((short) Math.min(bytes.length, 0xffff));
+        buffer.put(bytes, 0, Math.min(bytes.length, 0xffff));
+    }
+
+    private int symbolId(YFQuote quote) throws IOException {
+        int globalId = quote.getSymbolId();
+        if (globalId < 0) {
+            throw new IOException("YFJournalWriter cannot write a quote without a symbol");
+        }
+        if (globalId >= segmentSymbolIds.length) {
+            int oldLength = segmentSymbolIds.length;
+            segmentSymbolIds = Arrays.copyOf(segmentSymbolIds, Math.max(globalId + 1, oldLength * 2));
+            Arrays.fill(segmentSymbolIds, oldLength, segmentSymbolIds.length, -1);
+        }
+        int id = segmentSymbolIds[globalId];
+        if (id >= 0) {
+            return id;
+        }
+        byte[] bytes = quote.getId().getBytes(StandardCharsets.UTF_8);
+        ensureRemaining(1 + 4 + 2 + bytes.length);
+        id = segmentSymbolCount++;
+        buffer.put(SYMBOL_RECORD);
+        buffer.putInt(id);
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+        segmentSymbolIds[globalId] = id;
+        return id;
+    }
+
+    private void ensureRemaining(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            writeBuffer();
+            if (buffer.remaining() < bytes) {
+                throw new IOException("YFJournalWriter record too large: " + bytes + " bytes");
+            }
+        }
+    }
+
+    private void startSegment() throws IOException {
+        if (channel != null) {
+            writeBuffer();
+            channel.close();
+        }
+        segmentNumber++;
+        File segment = YFJournalReader.segmentFile(directory, segmentNumber);
+        channel = FileChannel.open(segment.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        segmentPosition = 0;
+        Arrays.fill(segmentSymbolIds, -1);
+        segmentSymbolCount = 0;
+
+        buffer.putInt(MAGIC);
+        buffer.putShort((short) ALL_FIELDS.length);
+        for (YFField yff : ALL_FIELDS) {
+            byte[] id = yff.getFieldId().getBytes(StandardCharsets.US_ASCII);
+            buffer.put((byte) id.length);
+            buffer.put(id);
+        }
+    }
+
+    private void writeBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            segmentPosition += channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Writes the buffered records to disk.
+     */
+    public synchronized void flush() throws IOException {
+        if (channel != null && !closed) {
+            writeBuffer();
+            channel.force(false);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            flush();
+        } finally {
+            closed = true;
+            if (channel != null) {
+                channel.close();
+            }
+        }
+    }
+}
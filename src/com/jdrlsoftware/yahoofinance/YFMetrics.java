@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2012 Jim Merrell - JDRL Software
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jdrlsoftware.yahoofinance;
+
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Collects the measurements of <code>YFApi</code> and
+ * <code>YFQuoteCache</code> into a latency histogram per stage and a set of
+ * counters, which can be published through JMX.
+ * <p>
+ * Metrics are off until a listener is set; the api then only checks for a
+ * null listener.  To collect them:
+ * <pre>
+ * YFMetrics metrics = new YFMetrics();
+ * yfApi.setMetricsListener(metrics);
+ * yfQuoteCache.setMetricsListener(metrics);
+ * metrics.register("quotes");
+ * </pre>
+ *
+ * @author Jim Merrell - <www.jmerrell.com>
+ */
+public class YFMetrics implements YFMetricsListener, YFMetricsMBean {
+
+    public static final String JMX_DOMAIN = "com.jdrlsoftware.yahoofinance";
+
+    private final Map<YFStage, YFLatencyHistogram> histograms = new EnumMap<YFStage, YFLatencyHistogram>(YFStage.class);
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder linesParsed = new LongAdder();
+    private final LongAdder tokenMismatches = new LongAdder();
+    private final LongAdder droppedSymbols = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    private ObjectName objectName;
+
+    public YFMetrics() {
+        for (YFStage stage : YFStage.values()) {
+            histograms.put(stage, new YFLatencyHistogram());
+        }
+    }
+
+    /**
+     * @return The histogram of the durations of a stage
+     */
+    public YFLatencyHistogram getHistogram(YFStage stage) {
+        return histograms.get(stage);
+    }
+
+    @Override
+    public void stageCompleted(YFStage stage, long nanos) {
+        histograms.get(stage).record(nanos);
+    }
+
+    @Override
+    public void bytesRead(long bytes) {
+        bytesRead.add(bytes);
+    }
+
+    @Override
+    public void linesParsed(int lines) {
+        linesParsed.add(lines);
+    }
+
+    @Override
+    public void tokenMismatch() {
+        tokenMismatches.increment();
+    }
+
+    @Override
+    public void symbolsDropped(int count) {
+        droppedSymbols.add(count);
+    }
+
+    @Override
+    public void cacheAccessed(int hits, int misses) {
+        cacheHits.add(hits);
+        cacheMisses.add(misses);
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server under
+     * <code>com.jdrlsoftware.yahoofinance:type=YFMetrics,name=</code><i>name</i>.
+     *
+     * @return The name the metrics were registered under
+     * @throws JMException if the name is taken or not valid
+     */
+    public synchronized ObjectName register(String name) throws JMException {
+        if (objectName != null) {
+            throw new IllegalStateException("YFMetrics already registered as " + objectName);
+        }
+        ObjectName newName = new ObjectName(JMX_DOMAIN + ":type=YFMetrics,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, newName);
+        objectName = newName;
+        return newName;
+    }
+
+    /**
+     * Removes the metrics from the platform MBean server, if registered.
+     */
+    public synchronized void unregister() throws JMException {
+        if (objectName != null) {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            objectName = null;
+        }
+    }
+
+    @Override
+    public long getRequestCount() {
+        return histograms.get(YFStage.CONNECT).getCount();
+    }
+
+    @Override
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    @Override
+    public long getLinesParsed() {
+        return linesParsed.sum();
+    }
+
+    @Override
+    public long getTokenMismatches() {
+        return tokenMismatches.sum();
+    }
+
+    @Override
+    public long getDroppedSymbols() {
+        return droppedSymbols.sum();
+    }
+
+    @Override
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    @Override
+    public long getCacheMisses() {
+        return cacheMisses.sum();
+    }
+
+    @Override
+    public double getCacheHitRate() {
+        long hits = cacheHits.sum();
+        long total = hits + cacheMisses.sum();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    @Override
+    public double getConnectMeanMillis() {
+        return histograms.get(YFStage.CONNECT).getMean(TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public double getConnectP99Millis() {
+        return histograms.get(YFStage.CONNECT).getValueAtPercentile(99, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public double getFirstByteMeanMillis() {
+        return histograms.get(YFStage.FIRST_BYTE).getMean(TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public double getFirstByteP99Millis() {
+        return histograms.get(YFStage.FIRST_BYTE).getValueAtPercentile(99, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public double getBodyMeanMillis() {
+        return histograms.get(YFStage.BODY).getMean(TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public double getBodyP99Millis() {
+        return histograms.get(YFStage.BODY).getValueAtPercentile(99, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public double getParseMeanMillis() {
+        return histograms.get(YFStage.PARSE).getMean(TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public double getParseP99Millis() {
+        return histograms.get(YFStage.PARSE).getValueAtPercentile(99, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void reset() {
+        for (YFLatencyHistogram histogram : histograms.values()) {
+            histogram.reset();
+        }
+        bytesRead.reset();
+        linesParsed.reset();
+        tokenMismatches.reset();
+        droppedSymbols.reset();
+        cacheHits.reset();
+        cacheMisses.reset();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("YFMetrics:");
+        for (YFStage stage : YFStage.values()) {
+            sb.append("\n\t").append(stage).append(' ').append(histograms.get(stage));
+        }
+        sb.append("\n\tbytes=").append(getBytesRead()).append(" lines=").append(getLinesParsed())
+                .append(" mismatches=").append(getTokenMismatches()).append(" dropped=").append(getDroppedSymbols())
+                .append(" cacheHitRate=").append(String.format("%.3f", getCacheHitRate()));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2012 Jim Merrell - JDRL Software
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jdrlsoftware.yahoofinance;
+
+/**
+ * Receives measurements of the requests made by <code>YFApi</code> and of the
+ * lookups of a <code>YFQuoteCache</code>.
+ * <p>
+ * Methods are called on the threads making the requests, possibly several at
+ * a time, and should return quickly.  <code>YFMetrics</code> collects the
+ * measurements into histograms and counters.
+ *
+ * @author Jim Merrell - <www.jmerrell.com>
+ */
+public interface YFMetricsListener {
+
+    /**
+     * Called once per request for each stage it completed.
+     *
+     * @param stage The stage
+     * @param nanos The time spent in the stage
+     */
+    void stageCompleted(YFStage stage, long nanos);
+
+    /**
+     * Called once per request with the size of the response.
+     */
+    void bytesRead(long bytes);
+
+    /**
+     * Called once per request with the number of csv lines parsed.
+     */
+    void linesParsed(int lines);
+
+    /**
+     * Called for a csv line whose number of tokens does not match the number
+     * of field options requested.
+     */
+    void tokenMismatch();
+
+    /**
+     * Called when a response holds fewer lines than symbols requested, as
+     * Yahoo! Finance does for symbols such as ^DJI.
+     *
+     * @param count The number of symbols missing from the response
+     */
+    void symbolsDropped(int count);
+
+    /**
+     * Called once per call to a <code>YFQuoteCache</code>.
+     *
+     * @param hits The symbol/field pairs served from the cache
+     * @param misses The symbol/field pairs that had to be fetched
+     */
+    void cacheAccessed(int hits, int misses);
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2012 Jim Merrell - JDRL Software
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jdrlsoftware.yahoofinance;
+
+/**
+ * The JMX view of a <code>YFMetrics</code>.  Durations are in milliseconds.
+ *
+ * @author Jim Merrell - <www.jmerrell.com>
+ */
+public interface YFMetricsMBean {
+
+    long getRequestCount();
+
+    long getBytesRead();
+
+    long getLinesParsed();
+
+    long getTokenMismatches();
+
+    long getDroppedSymbols();
+
+    long getCacheHits();
+
+    long getCacheMisses();
+
+    /**
+     * @return The fraction of cache lookups that were hits, 0 if none
+     */
+    double getCacheHitRate();
+
+    double getConnectMeanMillis();
+
+    double getConnectP99Millis();
+
+    double getFirstByteMeanMillis();
+
+    double getFirstByteP99Millis();
+
+    double getBodyMeanMillis();
+
+    double getBodyP99Millis();
+
+    double getParseMeanMillis();
+
+    double getParseP99Millis();
+
+    /**
+     * Clears all histograms and counters.
+     */
+    void reset();
+}
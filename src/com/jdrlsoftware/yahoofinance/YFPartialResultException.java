@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2012 Jim Merrell - JDRL Software
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.jdrlsoftware.yahoofinance;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Thrown when some of the batches of a call failed while others succeeded.
+ * The symbols of the failed batches are listed, and the result of the
+ * batches that succeeded is attached: the quotes for
+ * <code>retrieveQuotes</code>, the snapshot for
+ * <code>retrieveSnapshot</code>.  Quotes of <code>streamQuotes</code> have
+ * already been passed to the listener.  The cause is the first batch
+ * failure.
+ *
+ * @author Jim Merrell - <www.jmerrell.com>
+ */
+public class YFPartialResultException extends YFException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<String> failedSymbols;
+    private transient Map<String, YFQuote> quotes = Collections.emptyMap();
+    private transient YFColumnarSnapshot snapshot;
+
+    /**
+     * @param message The detail message
+     * @param failedSymbols The symbols of the batches that failed
+     * @param cause The first batch failure
+     */
+    public YFPartialResultException(String message, List<String> failedSymbols, Throwable cause) {
+        super(message, cause instanceof YFException ? ((YFException) cause).getStatusCode() : -1, cause);
+        this.failedSymbols = Collections.unmodifiableList(failedSymbols);
+    }
+
+    /**
+     * @return The symbols of the batches that failed
+     */
+    public List<String> getFailedSymbols() {
+        return failedSymbols;
+    }
+
+    /**
+     * @return The quotes of the batches that succeeded, by symbol, empty if
+     * the call does not return quotes
+     */
+    public Map<String, YFQuote> getQuotes() {
+        return quotes;
+    }
+
+    void setQuotes(Map<String, YFQuote> quotes) {
+        this.quotes = Collections.unmodifiableMap(quotes);
+    }
+
+    /**
+     * @return The snapshot of the batches that succeeded, or null if the
+     * call does not return a snapshot
+     */
+    public YFColumnarSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    void setSnapshot(YFColumnarSnapshot snapshot) {
+        this.snapshot = snapshot;
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2012 Jim Merrell - JDRL Software
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jdrlsoftware.yahoofinance;
+
+/**
+ * A failure that will happen again if the same request is retried, such as
+ * a malformed request or a response that cannot be parsed.
+ *
+ * @author Jim Merrell - <www.jmerrell.com>
+ */
+public class YFPermanentException extends YFException {
+
+    private static final long serialVersionUID = 1L;
+
+    public YFPermanentException(String message) {
+        super(message);
+    }
+
+    public YFPermanentException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public YFPermanentException(String message, int statusCode, Throwable cause) {
+        super(message, statusCode, cause);
+    }
+}
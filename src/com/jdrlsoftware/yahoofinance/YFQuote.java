@@ -18,43 +18,308 @@
 package com.jdrlsoftware.yahoofinance;
 
 
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
 import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.Map;
 
 /**
+ * The data of one symbol returned by Yahoo! Finance.
+ * <p>
+ * Quotes loaded by <code>YFApi</code> are lazy: they keep the csv line and the
+ * offsets of its tokens, and create the <code>YFDataItem</code> of a field
+ * only when it is first asked for.  A caller that reads a few fields of a
+ * quote therefore pays for those fields only.
  *
  * @author Jim Merrell - <www.jmerrell.com>
  */
 public class YFQuote {
     private final String id;
+    private final int symbolId;
     private Map<YFField,YFDataItem> fieldDataMap;
+
+    /**
+     * The csv line of a lazy quote, null once the quote has been changed or
+     * for a quote that was not loaded lazily
+     */
+    private String line;
+    private YFField[] columns;
+
+    /**
+     * The plan of a lazy quote, whose columns after the fetched ones are
+     * derived
+     */
+    private YFFieldPlan plan;
+
+    /**
+     * Start and end offset in <code>line</code> of the token of each column
+     */
+    private int[] tokenOffsets;
+    private YFDataItem[] columnItems;
+
+    /**
+     * true if the quote was loaded lazily, in which case its data is only
+     * used while holding the lock
+     */
+    private final boolean lazy;
     
     public YFQuote(String id, EnumMap<YFField, YFDataItem> fieldDataMap) {
-        this.id = id;
+        YFSymbolDictionary dictionary = YFSymbolDictionary.getDefault();
+        this.symbolId = id != null ? dictionary.getId(id) : -1;
+        this.id = id != null ? dictionary.getSymbol(symbolId) : null;
         this.fieldDataMap = fieldDataMap;
+        this.lazy = false;
+    }
+
+    /**
+     * @param symbolId The id of the symbol in the default
+     * <code>YFSymbolDictionary</code>
+     */
+    YFQuote(int symbolId, EnumMap<YFField, YFDataItem> fieldDataMap) {
+        this.symbolId = symbolId;
+        this.id = YFSymbolDictionary.getDefault().getSymbol(symbolId);
+        this.fieldDataMap = fieldDataMap;
+        this.lazy = false;
+    }
+
+    /**
+     * Creates a lazy quote from the current line of a tokenizer.
+     *
+     * @param symbolId The id of the symbol in the default
+     * <code>YFSymbolDictionary</code>
+     * @param tokenizer A tokenizer holding one token per fetched field
+     * @param plan The plan the line was requested with
+     */
+    YFQuote(int symbolId, YFTokenizer tokenizer, YFFieldPlan plan) {
+        this.symbolId = symbolId;
+        this.id = YFSymbolDictionary.getDefault().getSymbol(symbolId);
+        // the tokenizer's line may be a view of a reused read buffer
+        this.line = tokenizer.getLine().toString();
+        this.plan = plan;
+        this.columns = plan.columns();
+        int tokenCount = plan.fetchFields().length;
+        this.tokenOffsets = new int[tokenCount * 2];
+        for (int i = 0; i < tokenCount; i++) {
+            tokenOffsets[i * 2] = tokenizer.getTokenStart(i);
+            tokenOffsets[i * 2 + 1] = tokenizer.getTokenEnd(i);
+        }
+        this.lazy = true;
     }
     
     public String getId() {
         return id;
     }
+
+    /**
+     * @return The id of the symbol in the default
+     * <code>YFSymbolDictionary</code>, -1 if the quote has no symbol
+     */
+    public int getSymbolId() {
+        return symbolId;
+    }
+
+    /**
+     * @return true if both quotes were loaded from the same csv line into
+     * the same columns, derived ones included, and neither has been changed
+     * since, so all their fields are equal
+     */
+    boolean isSameLoad(YFQuote other) {
+        if (!lazy || !other.lazy) {
+            return false;
+        }
+        String loadedLine;
+        YFField[] loadedColumns;
+        synchronized (this) {
+            loadedLine = line;
+            loadedColumns = columns;
+        }
+        String otherLine;
+        YFField[] otherColumns;
+        synchronized (other) {
+            otherLine = other.line;
+            otherColumns = other.columns;
+        }
+        // the lines are only compared here, so parsing a line costs no hash
+        return loadedLine != null && otherLine != null && Arrays.equals(loadedColumns, otherColumns)
+                && loadedLine.equals(otherLine);
+    }
     
     private Map<YFField,YFDataItem> getFieldDataMap() {
+        if (line != null) {
+            // a lazy quote that is changed holds all its data items
+            EnumMap<YFField,YFDataItem> dataItemMap = new EnumMap<YFField,YFDataItem>(YFField.class);
+            for (int col = 0; col < columns.length; col++) {
+                dataItemMap.put(columns[col], columnItem(col));
+            }
+            fieldDataMap = dataItemMap;
+            line = null;
+            plan = null;
+            columns = null;
+            tokenOffsets = null;
+            columnItems = null;
+        }
         if (fieldDataMap == null) {
             fieldDataMap = new EnumMap<YFField,YFDataItem>(YFField.class);
         }
         return fieldDataMap;
     }
 
-    private Collection<YFField> getFields() {
+    /**
+     * @return The column holding the field, the last one if the field was
+     * requested more than once, or -1
+     */
+    private int column(YFField yff) {
+        for (int col = columns.length - 1; col >= 0; col--) {
+            if (columns[col] == yff) {
+                return col;
+            }
+        }
+        return -1;
+    }
+
+    private YFDataItem columnItem(int col) {
+        if (columnItems == null) {
+            columnItems = new YFDataItem[columns.length];
+        }
+        YFDataItem item = columnItems[col];
+        if (item == null) {
+            YFField yff = columns[col];
+            String value;
+            if (col * 2 >= tokenOffsets.length) {
+                // a derived column, computed from its fetched sources
+                value = YFFieldPlan.derive(yff, columnItem(plan.sourceColumn(col, 0)).getValue(),
+                        columnItem(plan.sourceColumn(col, 1)).getValue());
+            } else if (yff == YFField.SYMBOL) {
+                value = id;
+            } else {
+                int start = tokenOffsets[col * 2];
+                int end = tokenOffsets[col * 2 + 1];
+                value = start == end ? YFTokenizer.EMPTY_TOKEN : line.substring(start, end);
+            }
+            item = new YFDataItem(yff, value);
+            columnItems[col] = item;
+        }
+        return item;
+    }
+
+    /**
+     * Receives the values of a quote as ranges of characters.
+     */
+    interface ValueVisitor {
+
+        /**
+         * @param chars The characters holding the value, null if the value
+         * is null
+         */
+        void value(YFField yff, CharSequence chars, int start, int end);
+    }
+
+    /**
+     * Passes each value of the quote to the visitor, a field held twice
+     * last.  The fetched columns of a lazy quote are passed as ranges of its
+     * csv line, so no data items are created for them.
+     */
+    void visitValues(ValueVisitor visitor) {
+        if (lazy) {
+            synchronized (this) {
+                if (line != null) {
+                    for (int col = 0; col < columns.length; col++) {
+                        YFDataItem item = columnItems != null ? columnItems[col] : null;
+                        if (item == null && columns[col] == YFField.SYMBOL) {
+                            visitor.value(YFField.SYMBOL, id, 0, id.length());
+                        } else if (item == null && col * 2 < tokenOffsets.length) {
+                            int start = tokenOffsets[col * 2];
+                            int end = tokenOffsets[col * 2 + 1];
+                            if (start == end) {
+                                visitor.value(columns[col], YFTokenizer.EMPTY_TOKEN, 0, YFTokenizer.EMPTY_TOKEN.length());
+                            } else {
+                                visitor.value(columns[col], line, start, end);
+                            }
+                        } else {
+                            visitValue(visitor, columnItem(col));
+                        }
+                    }
+                    return;
+                }
+                for (YFDataItem item : getFieldDataMap().values()) {
+                    visitValue(visitor, item);
+                }
+                return;
+            }
+        }
+        for (YFDataItem item : getFieldDataMap().values()) {
+            visitValue(visitor, item);
+        }
+    }
+
+    private static void visitValue(ValueVisitor visitor, YFDataItem item) {
+        String value = item.getValue();
+        visitor.value(item.getYFField(), value, 0, value != null ? value.length() : 0);
+    }
+
+    /**
+     * @return true if this quote holds every field the other quote holds
+     */
+    boolean containsFields(YFQuote other) {
+        if (lazy && other.lazy) {
+            YFField[] loadedColumns;
+            YFField[] otherColumns;
+            synchronized (this) {
+                loadedColumns = line != null ? columns : null;
+            }
+            synchronized (other) {
+                otherColumns = other.line != null ? other.columns : null;
+            }
+            if (loadedColumns != null && loadedColumns == otherColumns) {
+                // loaded with the same plan
+                return true;
+            }
+        }
+        for (YFField yff : other.getFields()) {
+            if (!containsField(yff)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    Collection<YFField> getFields() {
+        if (lazy) {
+            synchronized (this) {
+                EnumSet<YFField> fields = EnumSet.noneOf(YFField.class);
+                if (line != null) {
+                    Collections.addAll(fields, columns);
+                } else {
+                    fields.addAll(getFieldDataMap().keySet());
+                }
+                return fields;
+            }
+        }
         return getFieldDataMap().keySet();
     }
     
     public boolean containsField(YFField yff) {
+        if (lazy) {
+            synchronized (this) {
+                return line != null ? column(yff) >= 0 : getFieldDataMap().containsKey(yff);
+            }
+        }
         return getFieldDataMap().containsKey(yff);
     }
     
-    private YFDataItem getDataItem(YFField yffKey) {
+    YFDataItem getDataItem(YFField yffKey) {
+        if (lazy) {
+            synchronized (this) {
+                if (line != null) {
+                    int col = column(yffKey);
+                    return col >= 0 ? columnItem(col) : null;
+                }
+                return getFieldDataMap().get(yffKey);
+            }
+        }
         return getFieldDataMap().get(yffKey);
     }
     
@@ -67,8 +332,62 @@ public class YFQuote {
         }
     }
     
+    /**
+     * Returns the value of a numeric field.  The value is parsed the first time
+     * it is requested and kept as a primitive.
+     *
+     * @param yffKey The field to return
+     * @return The value, or <code>Double.NaN</code> if the field is missing or
+     * not available
+     */
+    public double getDouble(YFField yffKey) {
+        YFDataItem item = getDataItem(yffKey);
+        if (item != null) {
+            return item.getDoubleValue();
+        } else {
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * Returns the value of a numeric field rounded to a long.  Date fields
+     * return milliseconds since the epoch, time fields milliseconds since
+     * midnight.
+     *
+     * @param yffKey The field to return
+     * @return The value, or <code>YFValueType.NA_LONG</code> if the field is
+     * missing or not available
+     */
+    public long getLong(YFField yffKey) {
+        YFDataItem item = getDataItem(yffKey);
+        if (item != null) {
+            return item.getLongValue();
+        } else {
+            return YFValueType.NA_LONG;
+        }
+    }
+
+    /**
+     * @param yffKey A field of type <code>YFValueType.DATE</code>
+     * @return The date, or null if the field is missing, not available or not
+     * a date
+     */
+    public Date getDate(YFField yffKey) {
+        if (yffKey.getValueType() != YFValueType.DATE) {
+            return null;
+        }
+        long millis = getLong(yffKey);
+        return millis == YFValueType.NA_LONG ? null : new Date(millis);
+    }
+
     public void addQuoteData(YFDataItem qd) {
-        getFieldDataMap().put(qd.getYFField(), qd);
+        if (lazy) {
+            synchronized (this) {
+                getFieldDataMap().put(qd.getYFField(), qd);
+            }
+        } else {
+            getFieldDataMap().put(qd.getYFField(), qd);
+        }
     }
     
     public String printInfo() {
@@ -0,0 +1,352 @@
+/*
+ * Copyright (C) 2012 Jim Merrell - JDRL Software
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jdrlsoftware.yahoofinance;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A cache in front of <code>YFApi</code> that remembers the quote data of
+ * recently requested symbols.
+ * <p>
+ * Freshness is tracked per symbol and field: each <code>YFField</code> has its
+ * own time to live, so slowly changing fields such as NAME can be kept for
+ * hours while LAST_TRADE is refetched after a few seconds.  Only the
+ * symbol/field pairs that are missing or expired are fetched; the quotes
+ * returned combine cached and fresh data.  The cache holds at most
+ * <code>maxSymbols</code> symbols and evicts the least recently used one
+ * when full.  A cache can be shared between threads.
+ *
+ * @author Jim Merrell - <www.jmerrell.com>
+ */
+public class YFQuoteCache {
+
+    /**
+     * Time to live of fields without a time to live of their own.
+     */
+    public static final long DEFAULT_TIME_TO_LIVE_MILLIS = 5000;
+
+    /**
+     * Time to live of fields that rarely change, such as NAME.
+     */
+    public static final long STATIC_TIME_TO_LIVE_MILLIS = 60 * 60 * 1000;
+
+    public static final int DEFAULT_MAX_SYMBOLS = 10000;
+
+    private static final YFField[] ALL_FIELDS = YFField.values();
+
+    private final YFApi yfApi;
+    private final int maxSymbols;
+    private final long[] timeToLiveNanos = new long[ALL_FIELDS.length];
+    private final YFSymbolDictionary dictionary = YFSymbolDictionary.getDefault();
+    private final YFIntMap<CacheEntry> entries = new YFIntMap<CacheEntry>();
+
+    /**
+     * Ends of the list of entries from least to most recently used
+     */
+    private CacheEntry eldest;
+    private CacheEntry youngest;
+    private long hitCount;
+    private long missCount;
+    private volatile YFMetricsListener metricsListener;
+
+    /**
+     * The cached data items of a symbol and when each was fetched, by field
+     * ordinal.
+     */
+    private static class CacheEntry {
+
+        final int symbolId;
+        final YFDataItem[] items = new YFDataItem[ALL_FIELDS.length];
+        final long[] fetchedAt = new long[ALL_FIELDS.length];
+        CacheEntry older;
+        CacheEntry newer;
+
+        CacheEntry(int symbolId) {
+            this.symbolId = symbolId;
+        }
+    }
+
+    public YFQuoteCache(YFApi yfApi) {
+        this(yfApi, DEFAULT_MAX_SYMBOLS);
+    }
+
+    /**
+     * @param yfApi The api used to fetch missing data
+     * @param maxSymbols The maximum number of symbols kept in the cache
+     */
+    public YFQuoteCache(YFApi yfApi, int maxSymbols) {
+        if (yfApi == null) {
+            throw new IllegalArgumentException("YFQuoteCache api cannot be null");
+        }
+        if (maxSymbols < 1) {
+            throw new IllegalArgumentException("YFQuoteCache max symbols must be at least 1");
+        }
+        this.yfApi = yfApi;
+        this.maxSymbols = maxSymbols;
+        for (YFField yff : ALL_FIELDS) {
+            timeToLiveNanos[yff.ordinal()] = TimeUnit.MILLISECONDS.toNanos(DEFAULT_TIME_TO_LIVE_MILLIS);
+        }
+        for (YFField yff : new YFField[]{YFField.SYMBOL, YFField.NAME, YFField.STOCK_EXCHG, YFField.BOOK_VALUE}) {
+            timeToLiveNanos[yff.ordinal()] = TimeUnit.MILLISECONDS.toNanos(STATIC_TIME_TO_LIVE_MILLIS);
+        }
+    }
+
+    /**
+     * Sets how long a cached value of the field is used before it is fetched
+     * again.
+     */
+    public synchronized void setTimeToLive(YFField yff, long duration, TimeUnit unit) {
+        if (duration < 0) {
+            throw new IllegalArgumentException("YFQuoteCache time to live cannot be negative");
+        }
+        timeToLiveNanos[yff.ordinal()] = unit.toNanos(duration);
+    }
+
+    public synchronized long getTimeToLive(YFField yff, TimeUnit unit) {
+        return unit.convert(timeToLiveNanos[yff.ordinal()], TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Sets a listener that receives the hits and misses of each call.
+     *
+     * @param metricsListener The listener, or null to stop measuring
+     */
+    public void setMetricsListener(YFMetricsListener metricsListener) {
+        this.metricsListener = metricsListener;
+    }
+
+    public int getMaxSymbols() {
+        return maxSymbols;
+    }
+
+    /**
+     * Returns the quote information for the given list of ticker symbols,
+     * fetching only the symbol/field pairs that are not cached or have
+     * expired.
+     *
+     * @param tickerSymbols Ticker symbols as defined by Yahoo! Finance
+     * @param fieldOptions The fields that will be returned
+     * @return The map of <code>YFQuote</code> objects.
+     * @throws Exception
+     */
+    public Map<String, YFQuote> retrieveQuotes(String[] tickerSymbols, YFField[] fieldOptions) throws Exception {
+
+        if (tickerSymbols == null || tickerSymbols.length == 0) {
+            throw new IllegalArgumentException("Yahoo Finance ticker symbols cannot be empty/null");
+        }
+
+        if (fieldOptions == null || fieldOptions.length == 0) {
+            throw new IllegalArgumentException("Yahoo Finance field options cannot be empty/null");
+        }
+
+        // group the symbols by the set of fields they are missing, so that
+        // each group needs a single request
+        Map<EnumSet<YFField>, List<String>> missing = new HashMap<EnumSet<YFField>, List<String>>();
+        int hits = 0;
+        int misses = 0;
+        synchronized (this) {
+            long now = System.nanoTime();
+            for (String symbol : tickerSymbols) {
+                CacheEntry entry = get(symbol);
+                EnumSet<YFField> missingFields = EnumSet.noneOf(YFField.class);
+                for (YFField yff : fieldOptions) {
+                    if (isFresh(entry, yff, now)) {
+                        hits++;
+                    } else {
+                        missingFields.add(yff);
+                        misses++;
+                    }
+                }
+                if (!missingFields.isEmpty()) {
+                    List<String> group = missing.get(missingFields);
+                    if (group == null) {
+                        group = new ArrayList<String>();
+                        missing.put(missingFields, group);
+                    }
+                    group.add(symbol);
+                }
+            }
+            hitCount += hits;
+            missCount += misses;
+        }
+        YFMetricsListener metrics = metricsListener;
+        if (metrics != null) {
+            metrics.cacheAccessed(hits, misses);
+        }
+
+        for (Map.Entry<EnumSet<YFField>, List<String>> group : missing.entrySet()) {
+            EnumSet<YFField> fetchFields = EnumSet.copyOf(group.getKey());
+            fetchFields.add(YFField.SYMBOL);
+            List<String> symbols = group.getValue();
+            Map<String, YFQuote> fetched;
+            try {
+                fetched = yfApi.retrieveQuotes(symbols.toArray(new String[symbols.size()]),
+                        fetchFields.toArray(new YFField[fetchFields.size()]));
+            } catch (YFPartialResultException e) {
+                // keep what did load for the next call
+                store(symbols, fetchFields, e.getQuotes());
+                throw e;
+            }
+            store(symbols, fetchFields, fetched);
+        }
+
+        Map<String, YFQuote> quotes = new HashMap<String, YFQuote>();
+        synchronized (this) {
+            for (String symbol : tickerSymbols) {
+                CacheEntry entry = get(symbol);
+                if (entry == null) {
+                    // not returned by Yahoo! Finance, or already evicted
+                    continue;
+                }
+                EnumMap<YFField, YFDataItem> dataItemMap = new EnumMap<YFField, YFDataItem>(YFField.class);
+                for (YFField yff : fieldOptions) {
+                    YFDataItem item = entry.items[yff.ordinal()];
+                    if (item != null) {
+                        dataItemMap.put(yff, item);
+                    }
+                }
+                YFQuote quote = new YFQuote(entry.symbolId, dataItemMap);
+                quotes.put(quote.getId(), quote);
+            }
+        }
+        return quotes;
+    }
+
+    private synchronized void store(List<String> symbols, EnumSet<YFField> fetchFields, Map<String, YFQuote> fetched) {
+        long now = System.nanoTime();
+        for (String symbol : symbols) {
+            YFQuote quote = fetched.get(symbol);
+            if (quote == null) {
+                continue;
+            }
+            CacheEntry entry = get(symbol);
+            if (entry == null) {
+                entry = new CacheEntry(quote.getSymbolId());
+                entries.put(entry.symbolId, entry);
+                link(entry);
+                if (entries.size() > maxSymbols) {
+                    remove(eldest);
+                }
+            }
+            for (YFField yff : fetchFields) {
+                YFDataItem item = quote.getDataItem(yff);
+                if (item != null) {
+                    entry.items[yff.ordinal()] = item;
+                    entry.fetchedAt[yff.ordinal()] = now;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The entry of the symbol, marked as the most recently used, or
+     * null
+     */
+    private CacheEntry get(String symbol) {
+        CacheEntry entry = entries.get(dictionary.lookup(symbol));
+        if (entry != null && entry != youngest) {
+            unlink(entry);
+            link(entry);
+        }
+        return entry;
+    }
+
+    private void remove(CacheEntry entry) {
+        entries.remove(entry.symbolId);
+        unlink(entry);
+    }
+
+    /**
+     * Adds the entry as the most recently used.
+     */
+    private void link(CacheEntry entry) {
+        entry.older = youngest;
+        entry.newer = null;
+        if (youngest != null) {
+            youngest.newer = entry;
+        } else {
+            eldest = entry;
+        }
+        youngest = entry;
+    }
+
+    private void unlink(CacheEntry entry) {
+        if (entry.older != null) {
+            entry.older.newer = entry.newer;
+        } else {
+            eldest = entry.newer;
+        }
+        if (entry.newer != null) {
+            entry.newer.older = entry.older;
+        } else {
+            youngest = entry.older;
+        }
+        entry.older = null;
+        entry.newer = null;
+    }
+
+    private boolean isFresh(CacheEntry entry, YFField yff, long now) {
+        if (entry == null || entry.items[yff.ordinal()] == null) {
+            return false;
+        }
+        return now - entry.fetchedAt[yff.ordinal()] < timeToLiveNanos[yff.ordinal()];
+    }
+
+    /**
+     * Removes all cached data of the symbol.
+     */
+    public synchronized void invalidate(String symbol) {
+        CacheEntry entry = entries.get(dictionary.lookup(symbol));
+        if (entry != null) {
+            remove(entry);
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        eldest = null;
+        youngest = null;
+    }
+
+    /**
+     * @return The number of symbols cached
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return The number of symbol/field pairs served from the cache
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return The number of symbol/field pairs that had to be fetched
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2012 Jim Merrell - JDRL Software
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jdrlsoftware.yahoofinance;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * A quote found changed by a <code>YFQuotePoller</code>, with the fields that
+ * differ from the previous poll.  A symbol that was returned by the previous
+ * poll but not by the latest one is reported as removed, with no quote.
+ *
+ * @author Jim Merrell - <www.jmerrell.com>
+ */
+public class YFQuoteChange {
+
+    private final String group;
+    private final YFQuote quote;
+    private final YFQuote previousQuote;
+    private final Set<YFField> changedFields;
+
+    public YFQuoteChange(String group, YFQuote quote, YFQuote previousQuote, Set<YFField> changedFields) {
+        this.group = group;
+        this.quote = quote;
+        this.previousQuote = previousQuote;
+        this.changedFields = Collections.unmodifiableSet(changedFields);
+    }
+
+    /**
+     * @return The name of the polled group
+     */
+    public String getGroup() {
+        return group;
+    }
+
+    public String getSymbol() {
+        return quote != null ? quote.getId() : previousQuote.getId();
+    }
+
+    /**
+     * @return true if the symbol was left out of the latest poll's response
+     */
+    public boolean isRemoved() {
+        return quote == null;
+    }
+
+    /**
+     * @return The quote returned by the latest poll, or null if the symbol
+     * was removed
+     */
+    public YFQuote getQuote() {
+        return quote;
+    }
+
+    /**
+     * @return The quote returned by the previous poll, or null if the symbol
+     * was not returned before
+     */
+    public YFQuote getPreviousQuote() {
+        return previousQuote;
+    }
+
+    /**
+     * @return The fields whose value changed, all fields of the group if the
+     * symbol was not returned before or was removed
+     */
+    public Set<YFField> getChangedFields() {
+        return changedFields;
+    }
+
+    public boolean isChanged(YFField yff) {
+        return changedFields.contains(yff);
+    }
+
+    @Override
+    public String toString() {
+        return group + ": " + getSymbol() + (quote == null ? " removed" : " " + changedFields);
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2012 Jim Merrell - JDRL Software
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jdrlsoftware.yahoofinance;
+
+/**
+ * Receives the quotes a <code>YFQuotePoller</code> found changed.
+ *
+ * @author Jim Merrell - <www.jmerrell.com>
+ */
+public interface YFQuoteChangeListener {
+
+    /**
+     * Called on the polling thread for each quote that changed since the
+     * previous poll of its group, and for each symbol of the previous poll
+     * missing from the latest one.
+     *
+     * @param change The new quote and the fields that changed, or the
+     * removed symbol's previous quote
+     */
+    void quoteChanged(YFQuoteChange change);
+}
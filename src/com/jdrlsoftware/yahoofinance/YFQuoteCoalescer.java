@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) 2012 Jim Merrell - JDRL Software
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jdrlsoftware.yahoofinance;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Merges concurrent quote requests into shared upstream fetches.
+ * <p>
+ * The first request starts a short window.  Every request made before the
+ * window closes joins it: the symbols of all requests are combined and their
+ * fields unioned, and a single <code>YFApi.retrieveQuotes</code> call fetches
+ * them.  Each caller's future then completes with only the symbols and fields
+ * it asked for.  If the fetch fails, the futures of all requests in the window
+ * complete with the failure.
+ *
+ * @author Jim Merrell - <www.jmerrell.com>
+ */
+public class YFQuoteCoalescer {
+
+    public static final long DEFAULT_WINDOW_MILLIS = 10;
+
+    private final YFApi yfApi;
+    private final long windowMillis;
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService fetchExecutor;
+    private PendingFetch pending;
+    private boolean shutdown;
+
+    /**
+     * The requests collected during one window.
+     */
+    private static class PendingFetch {
+
+        final LinkedHashSet<String> symbols = new LinkedHashSet<String>();
+        final EnumSet<YFField> fields = EnumSet.of(YFField.SYMBOL);
+        final List<Request> requests = new ArrayList<Request>();
+    }
+
+    private static class Request {
+
+        final String[] symbols;
+        final YFField[] fields;
+        final CompletableFuture<Map<String, YFQuote>> future = new CompletableFuture<Map<String, YFQuote>>();
+
+        Request(String[] symbols, YFField[] fields) {
+            this.symbols = symbols;
+            this.fields = fields;
+        }
+    }
+
+    public YFQuoteCoalescer(YFApi yfApi) {
+        this(yfApi, DEFAULT_WINDOW_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param yfApi The api used for the merged fetches
+     * @param window How long requests are collected before they are fetched
+     * @param unit The unit of <code>window</code>
+     */
+    public YFQuoteCoalescer(YFApi yfApi, long window, TimeUnit unit) {
+        if (yfApi == null) {
+            throw new IllegalArgumentException("YFQuoteCoalescer api cannot be null");
+        }
+        if (window < 0) {
+            throw new IllegalArgumentException("YFQuoteCoalescer window cannot be negative");
+        }
+        this.yfApi = yfApi;
+        this.windowMillis = unit.toMillis(window);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(YFExecutors.daemonThreads("YFQuoteCoalescer-window"));
+        this.fetchExecutor = Executors.newCachedThreadPool(YFExecutors.daemonThreads("YFQuoteCoalescer-fetch"));
+    }
+
+    /**
+     * Requests quote information, sharing the upstream fetch with other
+     * requests made in the same window.
+     *
+     * @param tickerSymbols Ticker symbols as defined by Yahoo! Finance
+     * @param fieldOptions The fields that will be retrieved from Yahoo! Finance
+     * @return A future completed with the map of <code>YFQuote</code> objects
+     * @throws IllegalStateException if the coalescer has been shut down
+     */
+    public CompletableFuture<Map<String, YFQuote>> retrieveQuotes(String[] tickerSymbols, YFField[] fieldOptions) {
+
+        if (tickerSymbols == null || tickerSymbols.length == 0) {
+            throw new IllegalArgumentException("Yahoo Finance ticker symbols cannot be empty/null");
+        }
+
+        if (fieldOptions == null || fieldOptions.length == 0) {
+            throw new IllegalArgumentException("Yahoo Finance field options cannot be empty/null");
+        }
+
+        Request request = new Request(tickerSymbols.clone(), fieldOptions.clone());
+        synchronized (this) {
+            if (shutdown) {
+                throw new IllegalStateException("YFQuoteCoalescer has been shut down");
+            }
+            if (pending == null) {
+                // scheduled first, so a rejected window leaves no fetch
+                // that is never flushed
+                try {
+                    scheduler.schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            flush();
+                        }
+                    }, windowMillis, TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException e) {
+                    throw new IllegalStateException("YFQuoteCoalescer has been shut down", e);
+                }
+                pending = new PendingFetch();
+            }
+            for (String symbol : tickerSymbols) {
+                pending.symbols.add(symbol);
+            }
+            for (YFField yff : fieldOptions) {
+                pending.fields.add(yff);
+            }
+            pending.requests.add(request);
+        }
+        return request.future;
+    }
+
+    private void flush() {
+        final PendingFetch fetch;
+        synchronized (this) {
+            fetch = pending;
+            pending = null;
+        }
+        if (fetch == null) {
+            return;
+        }
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                Map<String, YFQuote> fetched;
+                try {
+                    fetched = yfApi.retrieveQuotes(fetch.symbols.toArray(new String[fetch.symbols.size()]),
+                            fetch.fields.toArray(new YFField[fetch.fields.size()]));
+                } catch (YFPartialResultException e) {
+                    // only the requests asking for a failed symbol fail
+                    Set<String> failedSymbols = new HashSet<String>(e.getFailedSymbols());
+                    for (Request request : fetch.requests) {
+                        if (Collections.disjoint(failedSymbols, Arrays.asList(request.symbols))) {
+                            request.future.complete(split(request, e.getQuotes()));
+                        } else {
+                            request.future.completeExceptionally(e);
+                        }
+                    }
+                    return;
+                } catch (Throwable t) {
+                    for (Request request : fetch.requests) {
+                        request.future.completeExceptionally(t);
+                    }
+                    return;
+                }
+                for (Request request : fetch.requests) {
+                    request.future.complete(split(request, fetched));
+                }
+            }
+        };
+        try {
+            fetchExecutor.execute(task);
+        } catch (RejectedExecutionException e) {
+            // shut down while the window was open
+            task.run();
+        }
+    }
+
+    /**
+     * @return The quotes of the request's symbols, holding only the fields
+     * the request asked for
+     */
+    private static Map<String, YFQuote> split(Request request, Map<String, YFQuote> fetched) {
+        Map<String, YFQuote> quotes = new HashMap<String, YFQuote>();
+        for (String symbol : request.symbols) {
+            YFQuote quote = fetched.get(symbol);
+            if (quote == null) {
+                continue;
+            }
+            EnumMap<YFField, YFDataItem> dataItemMap = new EnumMap<YFField, YFDataItem>(YFField.class);
+            for (YFField yff : request.fields) {
+                YFDataItem item = quote.getDataItem(yff);
+                if (item != null) {
+                    dataItemMap.put(yff, item);
+                }
+            }
+            quotes.put(symbol, new YFQuote(quote.getId(), dataItemMap));
+        }
+        return quotes;
+    }
+
+    /**
+     * Stops accepting requests; later calls throw
+     * <code>IllegalStateException</code>.  Requests already made are still
+     * fetched and completed.
+     */
+    public void shutdown() {
+        synchronized (this) {
+            shutdown = true;
+        }
+        scheduler.shutdown();
+        fetchExecutor.shutdown();
+    }
+}
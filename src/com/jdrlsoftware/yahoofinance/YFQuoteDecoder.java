@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2012 Jim Merrell - JDRL Software
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jdrlsoftware.yahoofinance;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads the messages of a <code>YFQuoteEncoder</code>.
+ * <p>
+ * {@link #decode(ByteBuffer)} returns a <code>YFQuoteView</code> that reads
+ * the values straight from the message buffer, without creating any
+ * objects per value; only the symbols a message introduces are turned into
+ * <code>String</code>s.  A decoder remembers the symbols of earlier messages,
+ * so the messages of one encoder must be decoded in the order they were
+ * encoded.  A decoder is not thread safe.
+ *
+ * @author Jim Merrell - <www.jmerrell.com>
+ */
+public class YFQuoteDecoder {
+
+    /**
+     * Id in the default <code>YFSymbolDictionary</code> of each symbol sent,
+     * by the index it was sent with
+     */
+    private int[] symbolIds = new int[1024];
+    private int symbolCount;
+
+    /**
+     * Decodes a message.  The buffer's position is moved past the message;
+     * the view reads it in place, so the buffer must not be changed while
+     * the view is used.
+     *
+     * @param message A buffer holding a message between its position and
+     * limit
+     * @return A view of the message's rows, before the first row
+     * @throws IllegalArgumentException if the message is not valid or does
+     * not follow the last message decoded
+     */
+    public YFQuoteView decode(ByteBuffer message) {
+        if (message == null) {
+            throw new IllegalArgumentException("YFQuoteDecoder message cannot be null");
+        }
+        try {
+            // read big-endian whatever the order of the caller's buffer
+            ByteBuffer b = message.duplicate();
+            YFQuoteView view = read(b);
+            message.position(b.position());
+            return view;
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("YFQuoteDecoder message is truncated", e);
+        } catch (IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("YFQuoteDecoder message is truncated", e);
+        }
+    }
+
+    private YFQuoteView read(ByteBuffer message) {
+        if (message.getInt() != YFQuoteEncoder.MAGIC) {
+            throw new IllegalArgumentException("YFQuoteDecoder message is not a quote message");
+        }
+        int fieldCount = getVarInt(message);
+        YFField[] fields = new YFField[fieldCount];
+        for (int col = 0; col < fieldCount; col++) {
+            byte[] id = new byte[message.get()];
+            message.get(id);
+            fields[col] = YFField.getField(new String(id, StandardCharsets.US_ASCII));
+            if (fields[col] == null) {
+                throw new IllegalArgumentException("YFQuoteDecoder unknown field id: "
+                        + new String(id, StandardCharsets.US_ASCII));
+            }
+        }
+
+        int base = getVarInt(message);
+        if (base == 0) {
+            // the encoder was new or reset; views of earlier messages keep
+            // the old symbols
+            symbolIds = new int[symbolIds.length];
+            symbolCount = 0;
+        } else if (base != symbolCount) {
+            throw new IllegalArgumentException("YFQuoteDecoder message out of order, expected symbol index "
+                    + symbolCount + " but got " + base);
+        }
+        int newSymbols = getVarInt(message);
+        YFSymbolDictionary dictionary = YFSymbolDictionary.getDefault();
+        for (int i = 0; i < newSymbols; i++) {
+            byte[] bytes = new byte[getVarInt(message)];
+            message.get(bytes);
+            String symbol = new String(bytes, StandardCharsets.UTF_8);
+            if (symbolCount == symbolIds.length) {
+                symbolIds = Arrays.copyOf(symbolIds, symbolCount * 2);
+            }
+            symbolIds[symbolCount++] = dictionary.getId(symbol);
+        }
+
+        int rowCount = getVarInt(message);
+        YFQuoteView view = new YFQuoteView(message, fields, rowCount, symbolIds, symbolCount);
+        message.position(view.end());
+        return view;
+    }
+
+    /**
+     * Decodes a message into quotes.
+     *
+     * @return The quotes of the message, by symbol
+     */
+    public Map<String, YFQuote> decodeQuotes(ByteBuffer message) {
+        YFQuoteView view = decode(message);
+        Map<String, YFQuote> quotes = new HashMap<String, YFQuote>(view.size() * 4 / 3 + 1);
+        while (view.next()) {
+            YFQuote quote = view.toQuote();
+            quotes.put(quote.getId(), quote);
+        }
+        return quotes;
+    }
+
+    static int getVarInt(ByteBuffer b) {
+        return (int) getVarLong(b);
+    }
+
+    static long getVarLong(ByteBuffer b) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte next = b.get();
+            value |= (long) (next & 0x7f) << shift;
+            if (next >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("YFQuoteDecoder varint too long");
+    }
+}
@@ -0,0 +1,333 @@
+/*
+ * Copyright (C) 2012 Jim Merrell - JDRL Software
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jdrlsoftware.yahoofinance;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Encodes quotes into a compact binary message, to be read back with a
+ * <code>YFQuoteDecoder</code>.
+ * <p>
+ * A message starts with a header listing the id of each field column once.
+ * It continues with the symbols not sent before, then one row per quote:
+ * <ul>
+ * <li>the symbol, as a varint index into the symbols sent so far</li>
+ * <li>a bitmap of the columns that are "N/A" or missing</li>
+ * <li>a bitmap of the columns stored as text</li>
+ * <li>the value of each column that is not "N/A"</li>
+ * </ul>
+ * PRICE and INTEGER values are stored as decimals: a zigzag varint of the
+ * digits with the number of digits after the point in its low 4 bits, so
+ * "254.37" takes 3 bytes and trailing zeros are kept.  Other values, and
+ * numbers that would not give back the same csv text such as "+0.75", are
+ * stored as varint length prefixed UTF-8 text.
+ * <p>
+ * The symbols sent are remembered, so a stream of messages sends each
+ * symbol once; messages must then be decoded in the order they were
+ * encoded, by one decoder.  {@link #reset()} starts over, making the next
+ * message readable on its own.  An encoder is not thread safe.
+ *
+ * @author Jim Merrell - <www.jmerrell.com>
+ */
+public class YFQuoteEncoder {
+
+    static final int MAGIC = 0x59465131; // "YFQ1"
+
+    static final byte TEXT_COLUMN = 0;
+    static final byte DECIMAL_COLUMN = 1;
+
+    /**
+     * Value returned by {@link #encodeDecimal} for text that is not a plain
+     * decimal
+     */
+    static final long NOT_DECIMAL = -1;
+
+    private static final int MAX_DIGITS = 15;
+    private static final int MAX_SCALE = 15;
+
+    private static final int INITIAL_CAPACITY = 64 * 1024;
+
+    private final YFField[] fields;
+    private final byte[] kinds;
+    private final int bitmapBytes;
+    private final byte[] header;
+    private ByteBuffer buffer = ByteBuffer.allocate(INITIAL_CAPACITY);
+
+    /**
+     * Index sent for each symbol by its id in the default
+     * <code>YFSymbolDictionary</code>, -1 if not yet sent
+     */
+    private int[] symbolIndexes = new int[1024];
+    private int symbolCount;
+
+    /**
+     * @param fieldOptions The columns of every message; SYMBOL is sent as the
+     * row's symbol and need not be listed
+     */
+    public YFQuoteEncoder(YFField[] fieldOptions) {
+        if (fieldOptions == null) {
+            throw new IllegalArgumentException("YFQuoteEncoder field options cannot be null");
+        }
+        List<YFField> columns = new ArrayList<YFField>(fieldOptions.length);
+        for (YFField yff : fieldOptions) {
+            if (yff != YFField.SYMBOL && !columns.contains(yff)) {
+                columns.add(yff);
+            }
+        }
+        this.fields = columns.toArray(new YFField[columns.size()]);
+        this.kinds = new byte[fields.length];
+        for (int col = 0; col < fields.length; col++) {
+            kinds[col] = kind(fields[col]);
+        }
+        this.bitmapBytes = (fields.length + 7) / 8;
+
+        ByteBuffer h = ByteBuffer.allocate(4 + 5 + fields.length * 3);
+        h.putInt(MAGIC);
+        putVarInt(h, fields.length);
+        for (YFField yff : fields) {
+            byte[] id = yff.getFieldId().getBytes(StandardCharsets.US_ASCII);
+            h.put((byte) id.length);
+            h.put(id);
+        }
+        this.header = Arrays.copyOf(h.array(), h.position());
+        Arrays.fill(symbolIndexes, -1);
+    }
+
+    /**
+     * @return How values of the field are stored when they allow it
+     */
+    static byte kind(YFField yff) {
+        switch (yff.getValueType()) {
+            case PRICE:
+            case INTEGER:
+                return DECIMAL_COLUMN;
+            default:
+                return TEXT_COLUMN;
+        }
+    }
+
+    /**
+     * Encodes text such as "-12.50" as a zigzag of its digits shifted left by
+     * 4 bits, or'ed with the number of digits after the point.
+     *
+     * @return The encoded decimal, or {@link #NOT_DECIMAL} if the text would
+     * not be given back exactly, for example with a sign or leading zero
+     */
+    static long encodeDecimal(String value) {
+        int length = value.length();
+        int pos = 0;
+        boolean negative = length > 0 && value.charAt(0) == '-';
+        if (negative) {
+            pos++;
+        }
+        long unscaled = 0;
+        int digits = 0;
+        int scale = -1;
+        for (; pos < length; pos++) {
+            char c = value.charAt(pos);
+            if (c >= '0' && c <= '9') {
+                if (digits == 1 && unscaled == 0 && scale < 0) {
+                    return NOT_DECIMAL; // a leading zero
+                }
+                unscaled = unscaled * 10 + (c - '0');
+                digits++;
+                if (scale >= 0) {
+                    scale++;
+                }
+            } else if (c == '.' && scale < 0 && digits > 0) {
+                scale = 0;
+            } else {
+                return NOT_DECIMAL;
+            }
+        }
+        if (digits == 0 || digits > MAX_DIGITS || scale == 0 || scale > MAX_SCALE || (negative && unscaled == 0)) {
+            return NOT_DECIMAL;
+        }
+        if (negative) {
+            unscaled = -unscaled;
+        }
+        return ((unscaled << 1) ^ (unscaled >> 63)) << 4 | Math.max(scale, 0);
+    }
+
+    public YFField[] getFields() {
+        return fields.clone();
+    }
+
+    /**
+     * Forgets the symbols sent, so the next message holds all its symbols.
+     */
+    public void reset() {
+        Arrays.fill(symbolIndexes, -1);
+        symbolCount = 0;
+    }
+
+    /**
+     * Encodes the quotes into the encoder's buffer, which is reused by the
+     * next call.
+     *
+     * @param quotes The quotes, each with a symbol
+     * @return The buffer, holding the message between its position and
+     * limit
+     */
+    public ByteBuffer encode(Collection<YFQuote> quotes) {
+        if (quotes == null) {
+            throw new IllegalArgumentException("YFQuoteEncoder quotes cannot be null");
+        }
+        buffer.clear();
+        ensureRemaining(header.length + 15);
+        buffer.put(header);
+
+        // the symbols not sent before, which take the next indexes
+        int base = symbolCount;
+        List<YFQuote> added = new ArrayList<YFQuote>();
+        try {
+            for (YFQuote quote : quotes) {
+                if (symbolIndex(quote) < 0) {
+                    symbolIndexes[quote.getSymbolId()] = symbolCount++;
+                    added.add(quote);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            for (YFQuote quote : added) {
+                symbolIndexes[quote.getSymbolId()] = -1;
+            }
+            symbolCount = base;
+            throw e;
+        }
+        putVarInt(base);
+        putVarInt(added.size());
+        for (YFQuote quote : added) {
+            byte[] bytes = quote.getId().getBytes(StandardCharsets.UTF_8);
+            ensureRemaining(5 + bytes.length);
+            putVarInt(bytes.length);
+            buffer.put(bytes);
+        }
+
+        ensureRemaining(5);
+        putVarInt(quotes.size());
+        for (YFQuote quote : quotes) {
+            putRow(quote);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * @return The index sent for the quote's symbol, or -1
+     */
+    private int symbolIndex(YFQuote quote) {
+        int id = quote.getSymbolId();
+        if (id < 0) {
+            throw new IllegalArgumentException("YFQuoteEncoder cannot encode a quote without a symbol");
+        }
+        if (id >= symbolIndexes.length) {
+            int oldLength = symbolIndexes.length;
+            symbolIndexes = Arrays.copyOf(symbolIndexes, Math.max(id + 1, oldLength * 2));
+            Arrays.fill(symbolIndexes, oldLength, symbolIndexes.length, -1);
+        }
+        return symbolIndexes[id];
+    }
+
+    private void putRow(YFQuote quote) {
+        ensureRemaining(5 + bitmapBytes * 2);
+        putVarInt(symbolIndexes[quote.getSymbolId()]);
+        int bitmaps = buffer.position();
+        for (int i = 0; i < bitmapBytes * 2; i++) {
+            buffer.put((byte) 0);
+        }
+        for (int col = 0; col < fields.length; col++) {
+            YFDataItem item = quote.getDataItem(fields[col]);
+            String value = item != null ? item.getValue() : null;
+            if (value == null || YFTokenizer.EMPTY_TOKEN.equals(value)) {
+                setBit(bitmaps, col);
+                continue;
+            }
+            if (kinds[col] == DECIMAL_COLUMN) {
+                long decimal = encodeDecimal(value);
+                if (decimal != NOT_DECIMAL) {
+                    ensureRemaining(10);
+                    putVarLong(decimal);
+                    continue;
+                }
+            }
+            setBit(bitmaps + bitmapBytes, col);
+            putText(value);
+        }
+    }
+
+    /**
+     * Writes the value as varint length prefixed UTF-8, without creating a
+     * byte array when it is ASCII.
+     */
+    private void putText(String value) {
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            if (value.charAt(i) >= 0x80) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                ensureRemaining(5 + bytes.length);
+                putVarInt(bytes.length);
+                buffer.put(bytes);
+                return;
+            }
+        }
+        ensureRemaining(5 + length);
+        putVarInt(length);
+        for (int i = 0; i < length; i++) {
+            buffer.put((byte) value.charAt(i));
+        }
+    }
+
+    private void setBit(int offset, int col) {
+        int index = offset + (col >> 3);
+        buffer.put(index, (byte) (buffer.get(index) | (1 << (col & 7))));
+    }
+
+    private void ensureRemaining(int bytes) {
+        if (buffer.remaining() < bytes) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+            buffer.flip();
+            larger.put(buffer);
+            buffer = larger;
+        }
+    }
+
+    private void putVarInt(int value) {
+        putVarLong(buffer, value & 0xffffffffL);
+    }
+
+    private void putVarLong(long value) {
+        putVarLong(buffer, value);
+    }
+
+    private static void putVarInt(ByteBuffer b, int value) {
+        putVarLong(b, value & 0xffffffffL);
+    }
+
+    private static void putVarLong(ByteBuffer b, long value) {
+        while ((value & ~0x7fL) != 0) {
+            b.put((byte) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        b.put((byte) value);
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2012 Jim Merrell - JDRL Software
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jdrlsoftware.yahoofinance;
+
+/**
+ * Receives quotes from <code>YFApi.streamQuotes</code> as soon as each csv
+ * line has been parsed.
+ * <p>
+ * Quotes are delivered one at a time, never concurrently, even when the
+ * request is fetched in several batches.  The next line of a response is not
+ * read until the listener returns, so a slow listener slows the stream down
+ * instead of letting quotes pile up in memory.
+ *
+ * @author Jim Merrell - <www.jmerrell.com>
+ */
+public interface YFQuoteListener {
+
+    /**
+     * Called for each quote received.
+     *
+     * @param quote The quote
+     * @return true to continue, false to cancel the stream and close its
+     * connections
+     */
+    boolean quoteReceived(YFQuote quote);
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2012 Jim Merrell - JDRL Software
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jdrlsoftware.yahoofinance;
+
+import java.util.Map;
+
+/**
+ * A node of a sharded deployment, fetching the quotes of the symbols it is
+ * given by a <code>YFShardCoordinator</code>.
+ *
+ * @author Jim Merrell - <www.jmerrell.com>
+ */
+public interface YFQuoteNode {
+
+    /**
+     * @return The name of the node, unique among the nodes of a coordinator;
+     * it decides which symbols the node owns
+     */
+    String getName();
+
+    /**
+     * Retrieves the quote information for the given symbols.
+     *
+     * @param tickerSymbols The symbols owned by the node
+     * @param fieldOptions The fields to retrieve
+     * @return The quotes retrieved, by symbol
+     * @throws Exception if the quotes cannot be retrieved
+     */
+    Map<String, YFQuote> retrieveQuotes(String[] tickerSymbols, YFField[] fieldOptions) throws Exception;
+}
@@ -0,0 +1,346 @@
+/*
+ * Copyright (C) 2012 Jim Merrell - JDRL Software
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jdrlsoftware.yahoofinance;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Polls groups of symbols at their own intervals and reports only what
+ * changed.
+ * <p>
+ * Every poll of a group is compared with the previous one.  A quote whose
+ * csv line is identical to the previous one is skipped without looking at
+ * its fields; otherwise each field is compared with
+ * <code>YFDataItem.equals</code> and listeners are sent a
+ * <code>YFQuoteChange</code> holding the changed fields.  The first poll
+ * reports every quote.  A symbol returned by the previous poll but missing
+ * from the latest one, as Yahoo! Finance does with some symbols, is reported
+ * as a removed <code>YFQuoteChange</code>; if it comes back it is reported
+ * like a new symbol.  The start and interval of each group are randomly
+ * spread by the jitter so that groups with equal intervals do not all fetch
+ * at the same moment.  A failed poll is logged and the group is polled again
+ * at its next interval.
+ *
+ * @author Jim Merrell - <www.jmerrell.com>
+ */
+public class YFQuotePoller {
+
+    public static final double DEFAULT_JITTER = 0.1;
+    public static final int DEFAULT_THREADS = 2;
+
+    private final YFApi yfApi;
+    private final ScheduledExecutorService scheduler;
+    private final Map<String, Group> groups = new ConcurrentHashMap<String, Group>();
+    private final List<YFQuoteChangeListener> listeners = new CopyOnWriteArrayList<YFQuoteChangeListener>();
+    private final Random random = new Random();
+    private volatile double jitter = DEFAULT_JITTER;
+    private volatile boolean started;
+
+    /**
+     * A group of symbols polled together.  A group is polled by one thread
+     * at a time, so <code>previousQuotes</code> needs no locking.
+     */
+    private class Group implements Runnable {
+
+        final String name;
+        final String[] symbols;
+        final YFField[] fields;
+        final long intervalNanos;
+        YFIntMap<YFQuote> previousQuotes = new YFIntMap<YFQuote>();
+        volatile ScheduledFuture<?> future;
+        volatile boolean removed;
+
+        Group(String name, String[] symbols, YFField[] fields, long intervalNanos) {
+            this.name = name;
+            this.symbols = symbols;
+            this.fields = fields;
+            this.intervalNanos = intervalNanos;
+        }
+
+        @Override
+        public void run() {
+            try {
+                poll(this);
+            } catch (Exception e) {
+                Logger.getLogger(YFQuotePoller.class.getName()).log(Level.WARNING,
+                        "YFQuotePoller poll of group " + name + " failed", e);
+            } finally {
+                schedule(this, jitter(intervalNanos));
+            }
+        }
+    }
+
+    public YFQuotePoller(YFApi yfApi) {
+        this(yfApi, DEFAULT_THREADS);
+    }
+
+    /**
+     * @param yfApi The api used to fetch the quotes
+     * @param threads The number of groups that can be polled at the same time
+     */
+    public YFQuotePoller(YFApi yfApi, int threads) {
+        if (yfApi == null) {
+            throw new IllegalArgumentException("YFQuotePoller YFApi cannot be null");
+        }
+        if (threads <= 0) {
+            throw new IllegalArgumentException("YFQuotePoller threads must be positive");
+        }
+        this.yfApi = yfApi;
+        this.scheduler = Executors.newScheduledThreadPool(threads, YFExecutors.daemonThreads("YFQuotePoller"));
+    }
+
+    /**
+     * Adds a group of symbols to poll, replacing any group with the same
+     * name.  SYMBOL is added to the fields if missing.
+     *
+     * @param name The name of the group, passed on in each change
+     * @param tickerSymbols The symbols to poll
+     * @param fieldOptions The fields to poll
+     * @param interval Time between the polls of the group
+     * @param unit Unit of the interval
+     */
+    public void addGroup(String name, String[] tickerSymbols, YFField[] fieldOptions, long interval, TimeUnit unit) {
+        if (name == null) {
+            throw new IllegalArgumentException("YFQuotePoller group name cannot be null");
+        }
+        if (tickerSymbols == null || tickerSymbols.length == 0) {
+            throw new IllegalArgumentException("YFQuotePoller ticker symbols cannot be empty");
+        }
+        if (fieldOptions == null || fieldOptions.length == 0) {
+            throw new IllegalArgumentException("YFQuotePoller field options cannot be empty");
+        }
+        if (interval <= 0) {
+            throw new IllegalArgumentException("YFQuotePoller interval must be positive");
+        }
+        EnumSet<YFField> fields = EnumSet.of(YFField.SYMBOL);
+        for (YFField yff : fieldOptions) {
+            fields.add(yff);
+        }
+        Group group = new Group(name, tickerSymbols.clone(), fields.toArray(new YFField[fields.size()]),
+                unit.toNanos(interval));
+        Group replaced = groups.put(name, group);
+        if (replaced != null) {
+            cancel(replaced);
+        }
+        if (started) {
+            schedule(group, randomDelay(group.intervalNanos));
+        }
+    }
+
+    /**
+     * Stops polling a group.
+     *
+     * @return true if the group existed
+     */
+    public boolean removeGroup(String name) {
+        Group group = groups.remove(name);
+        if (group == null) {
+            return false;
+        }
+        cancel(group);
+        return true;
+    }
+
+    public void addListener(YFQuoteChangeListener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("YFQuotePoller listener cannot be null");
+        }
+        listeners.add(listener);
+    }
+
+    public void removeListener(YFQuoteChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Sets how much the intervals are randomly spread, as a fraction of the
+     * interval.  With 0.1 a 10 second interval varies from 9 to 11 seconds.
+     */
+    public void setJitter(double jitter) {
+        if (jitter < 0 || jitter >= 1) {
+            throw new IllegalArgumentException("YFQuotePoller jitter must be at least 0 and less than 1");
+        }
+        this.jitter = jitter;
+    }
+
+    public double getJitter() {
+        return jitter;
+    }
+
+    /**
+     * Starts polling every group.  Each group first polls at a random point
+     * within its interval.
+     */
+    public synchronized void start() {
+        if (started) {
+            return;
+        }
+        if (scheduler.isShutdown()) {
+            throw new IllegalStateException("YFQuotePoller has been stopped");
+        }
+        started = true;
+        for (Group group : groups.values()) {
+            schedule(group, randomDelay(group.intervalNanos));
+        }
+    }
+
+    /**
+     * Stops polling.  A poll in progress is interrupted.
+     */
+    public synchronized void stop() {
+        started = false;
+        for (Group group : groups.values()) {
+            cancel(group);
+        }
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Polls a group once and sends the changes to the listeners.  The
+     * symbols of batches that failed keep their previous quotes, and are
+     * not reported as removed.
+     */
+    private void poll(Group group) throws Exception {
+        final List<YFQuote> quotes = new ArrayList<YFQuote>(group.symbols.length);
+        YFPartialResultException partial = null;
+        try {
+            yfApi.streamQuotes(group.symbols, group.fields, new YFQuoteListener() {
+                @Override
+                public boolean quoteReceived(YFQuote quote) {
+                    quotes.add(quote);
+                    return true;
+                }
+            });
+        } catch (YFPartialResultException e) {
+            partial = e;
+        }
+        Set<String> failedSymbols = partial == null ? Collections.<String>emptySet()
+                : new HashSet<String>(partial.getFailedSymbols());
+
+        YFIntMap<YFQuote> previousQuotes = group.previousQuotes;
+        YFIntMap<YFQuote> currentQuotes = new YFIntMap<YFQuote>(quotes.size());
+        for (YFQuote quote : quotes) {
+            currentQuotes.put(quote.getSymbolId(), quote);
+            YFQuote previous = previousQuotes.get(quote.getSymbolId());
+            EnumSet<YFField> changedFields = diff(previous, quote, group.fields);
+            if (!changedFields.isEmpty() && !group.removed) {
+                fireQuoteChanged(new YFQuoteChange(group.name, quote, previous, changedFields));
+            }
+        }
+        for (YFQuote previous : previousQuotes.values()) {
+            if (currentQuotes.containsKey(previous.getSymbolId())) {
+                continue;
+            }
+            if (failedSymbols.contains(previous.getId())) {
+                currentQuotes.put(previous.getSymbolId(), previous);
+            } else if (!group.removed) {
+                fireQuoteChanged(new YFQuoteChange(group.name, null, previous,
+                        EnumSet.copyOf(Arrays.asList(group.fields))));
+            }
+        }
+        group.previousQuotes = currentQuotes;
+        if (partial != null) {
+            throw partial;
+        }
+    }
+
+    /**
+     * @return The fields that differ between the quotes, all fields if there
+     * is no previous quote
+     */
+    static EnumSet<YFField> diff(YFQuote previous, YFQuote quote, YFField[] fields) {
+        EnumSet<YFField> changedFields = EnumSet.noneOf(YFField.class);
+        if (previous == null) {
+            for (YFField yff : fields) {
+                changedFields.add(yff);
+            }
+            return changedFields;
+        }
+        if (quote.isSameLoad(previous)) {
+            // the same csv line, so no field can have changed
+            return changedFields;
+        }
+        for (YFField yff : fields) {
+            YFDataItem item = quote.getDataItem(yff);
+            YFDataItem previousItem = previous.getDataItem(yff);
+            if (item == null ? previousItem != null : !item.equals(previousItem)) {
+                changedFields.add(yff);
+            }
+        }
+        return changedFields;
+    }
+
+    private void fireQuoteChanged(YFQuoteChange change) {
+        for (YFQuoteChangeListener listener : listeners) {
+            try {
+                listener.quoteChanged(change);
+            } catch (RuntimeException e) {
+                Logger.getLogger(YFQuotePoller.class.getName()).log(Level.WARNING,
+                        "YFQuotePoller listener failed", e);
+            }
+        }
+    }
+
+    private void schedule(Group group, long delayNanos) {
+        if (!started || group.removed || scheduler.isShutdown()) {
+            return;
+        }
+        group.future = scheduler.schedule(group, delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private static void cancel(Group group) {
+        group.removed = true;
+        ScheduledFuture<?> future = group.future;
+        if (future != null) {
+            future.cancel(false);
+        }
+    }
+
+    private long randomDelay(long intervalNanos) {
+        synchronized (random) {
+            return (long) (random.nextDouble() * intervalNanos);
+        }
+    }
+
+    /**
+     * @return The interval moved randomly by up to the jitter fraction
+     */
+    private long jitter(long intervalNanos) {
+        double spread;
+        synchronized (random) {
+            spread = (random.nextDouble() * 2 - 1) * jitter;
+        }
+        return (long) (intervalNanos * (1 + spread));
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2012 Jim Merrell - JDRL Software
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jdrlsoftware.yahoofinance;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The outcome of a <code>YFApi.retrieveQuoteResult</code> call: every quote
+ * that could be loaded, together with the lines that could not.
+ *
+ * @author Jim Merrell - <www.jmerrell.com>
+ */
+public class YFQuoteResult {
+
+    private final Map<String, YFQuote> quotes;
+    private final List<YFRowError> errors;
+    private final Set<String> failedSymbols;
+
+    public YFQuoteResult(Map<String, YFQuote> quotes, List<YFRowError> errors, Set<String> failedSymbols) {
+        this.quotes = Collections.unmodifiableMap(quotes);
+        this.errors = Collections.unmodifiableList(errors);
+        this.failedSymbols = Collections.unmodifiableSet(failedSymbols);
+    }
+
+    /**
+     * @return The quotes loaded, by symbol
+     */
+    public Map<String, YFQuote> getQuotes() {
+        return quotes;
+    }
+
+    /**
+     * @return The errors of the first request and of the follow-up request,
+     * in the order they happened
+     */
+    public List<YFRowError> getErrors() {
+        return errors;
+    }
+
+    /**
+     * @return The symbols that failed and still had no quote after the
+     * follow-up request
+     */
+    public Set<String> getFailedSymbols() {
+        return failedSymbols;
+    }
+
+    public boolean hasErrors() {
+        return !errors.isEmpty();
+    }
+}
@@ -0,0 +1,318 @@
+/*
+ * Copyright (C) 2012 Jim Merrell - JDRL Software
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jdrlsoftware.yahoofinance;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.EnumMap;
+
+/**
+ * A flyweight over the rows of a message decoded by a
+ * <code>YFQuoteDecoder</code>.
+ * <p>
+ * The view is moved from row to row and reads the values of the current
+ * row straight from the message buffer; numbers are read as primitives
+ * without creating any objects.  Only {@link #getString} of a text value and
+ * {@link #toQuote()} allocate.  A view is not thread safe.
+ *
+ * @author Jim Merrell - <www.jmerrell.com>
+ */
+public class YFQuoteView {
+
+    private static final double[] POWERS_OF_TEN = new double[16];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private final ByteBuffer buffer;
+    private final YFField[] fields;
+    private final byte[] kinds;
+    private final int bitmapBytes;
+
+    /**
+     * Column of each field by ordinal, -1 if not in the message
+     */
+    private final int[] columnIndex;
+
+    private final int[] symbolIds;
+    private final int symbolCount;
+    private final int[] rowOffsets;
+    private final int end;
+
+    private int row = -1;
+    private int symbolIndex;
+    private int bitmapOffset;
+
+    /**
+     * Offset of the value of each column of the current row, -1 if "N/A"
+     */
+    private final int[] valueOffsets;
+
+    /**
+     * Read cursor used while scanning a row
+     */
+    private int pos;
+
+    YFQuoteView(ByteBuffer message, YFField[] fields, int rowCount, int[] symbolIds, int symbolCount) {
+        this.buffer = message;
+        this.fields = fields;
+        this.kinds = new byte[fields.length];
+        this.columnIndex = new int[YFField.values().length];
+        Arrays.fill(columnIndex, -1);
+        for (int col = 0; col < fields.length; col++) {
+            kinds[col] = YFQuoteEncoder.kind(fields[col]);
+            columnIndex[fields[col].ordinal()] = col;
+        }
+        this.bitmapBytes = (fields.length + 7) / 8;
+        this.symbolIds = symbolIds;
+        this.symbolCount = symbolCount;
+        this.valueOffsets = new int[fields.length];
+        this.rowOffsets = new int[rowCount];
+        pos = message.position();
+        for (int r = 0; r < rowCount; r++) {
+            rowOffsets[r] = pos;
+            scanRow();
+        }
+        this.end = pos;
+    }
+
+    /**
+     * @return The offset after the last row
+     */
+    int end() {
+        return end;
+    }
+
+    /**
+     * Reads the row at <code>pos</code>, recording its symbol and the offset
+     * of each value.
+     */
+    private void scanRow() {
+        symbolIndex = (int) varLong();
+        if (symbolIndex < 0 || symbolIndex >= symbolCount) {
+            throw new IllegalArgumentException("YFQuoteView unknown symbol index " + symbolIndex);
+        }
+        bitmapOffset = pos;
+        pos += bitmapBytes * 2;
+        for (int col = 0; col < fields.length; col++) {
+            if (bit(bitmapOffset, col)) {
+                valueOffsets[col] = -1;
+                continue;
+            }
+            valueOffsets[col] = pos;
+            if (isText(col)) {
+                int length = (int) varLong();
+                pos += length;
+            } else {
+                varLong();
+            }
+        }
+        if (pos > buffer.limit()) {
+            throw new IllegalArgumentException("YFQuoteView message is truncated");
+        }
+    }
+
+    private boolean bit(int offset, int col) {
+        return (buffer.get(offset + (col >> 3)) & (1 << (col & 7))) != 0;
+    }
+
+    private boolean isText(int col) {
+        return kinds[col] == YFQuoteEncoder.TEXT_COLUMN || bit(bitmapOffset + bitmapBytes, col);
+    }
+
+    private long varLong() {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte next = buffer.get(pos++);
+            value |= (long) (next & 0x7f) << shift;
+            if (next >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("YFQuoteView varint too long");
+    }
+
+    /**
+     * @return The number of rows
+     */
+    public int size() {
+        return rowOffsets.length;
+    }
+
+    public YFField[] getFields() {
+        return fields.clone();
+    }
+
+    /**
+     * Moves to the next row.
+     *
+     * @return false if there are no more rows
+     */
+    public boolean next() {
+        if (row + 1 >= rowOffsets.length) {
+            return false;
+        }
+        moveTo(row + 1);
+        return true;
+    }
+
+    /**
+     * Moves to the given row.
+     */
+    public void moveTo(int row) {
+        if (row < 0 || row >= rowOffsets.length) {
+            throw new IndexOutOfBoundsException("YFQuoteView row " + row + " out of range, size=" + rowOffsets.length);
+        }
+        this.row = row;
+        pos = rowOffsets[row];
+        scanRow();
+    }
+
+    public int getRow() {
+        return row;
+    }
+
+    /**
+     * @return The id of the row's symbol in the default
+     * <code>YFSymbolDictionary</code>
+     */
+    public int getSymbolId() {
+        checkRow();
+        return symbolIds[symbolIndex];
+    }
+
+    public String getSymbol() {
+        return YFSymbolDictionary.getDefault().getSymbol(getSymbolId());
+    }
+
+    public boolean containsField(YFField yff) {
+        return yff == YFField.SYMBOL || columnIndex[yff.ordinal()] >= 0;
+    }
+
+    /**
+     * @return true if the field is "N/A" or not in the message
+     */
+    public boolean isNA(YFField yff) {
+        return yff != YFField.SYMBOL && valueOffset(yff) < 0;
+    }
+
+    /**
+     * @return The field's number, or <code>Double.NaN</code> if it is not
+     * available
+     */
+    public double getDouble(YFField yff) {
+        int offset = valueOffset(yff);
+        if (offset < 0) {
+            return Double.NaN;
+        }
+        int col = columnIndex[yff.ordinal()];
+        if (isText(col)) {
+            return yff.getValueType().parseDouble(getString(yff));
+        }
+        pos = offset;
+        long decimal = varLong();
+        // both are exact doubles, so the quotient is the closest double to
+        // the csv text
+        return unscaled(decimal) / POWERS_OF_TEN[(int) (decimal & 0xf)];
+    }
+
+    /**
+     * @return The field's number, or <code>YFValueType.NA_LONG</code> if it
+     * is not available
+     */
+    public long getLong(YFField yff) {
+        int offset = valueOffset(yff);
+        if (offset < 0) {
+            return YFValueType.NA_LONG;
+        }
+        int col = columnIndex[yff.ordinal()];
+        if (isText(col)) {
+            return yff.getValueType().parseLong(getString(yff));
+        }
+        pos = offset;
+        long decimal = varLong();
+        if ((decimal & 0xf) == 0) {
+            return unscaled(decimal);
+        }
+        return Math.round(unscaled(decimal) / POWERS_OF_TEN[(int) (decimal & 0xf)]);
+    }
+
+    /**
+     * @return The field's csv text, "N/A" if it is not available
+     */
+    public String getString(YFField yff) {
+        if (yff == YFField.SYMBOL) {
+            return getSymbol();
+        }
+        int offset = valueOffset(yff);
+        if (offset < 0) {
+            return YFTokenizer.EMPTY_TOKEN;
+        }
+        int col = columnIndex[yff.ordinal()];
+        if (isText(col)) {
+            pos = offset;
+            byte[] bytes = new byte[(int) varLong()];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = buffer.get(pos + i);
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+        pos = offset;
+        long decimal = varLong();
+        return BigDecimal.valueOf(unscaled(decimal), (int) (decimal & 0xf)).toPlainString();
+    }
+
+    /**
+     * Creates a quote holding the values of the current row.
+     */
+    public YFQuote toQuote() {
+        EnumMap<YFField, YFDataItem> dataItemMap = new EnumMap<YFField, YFDataItem>(YFField.class);
+        dataItemMap.put(YFField.SYMBOL, new YFDataItem(YFField.SYMBOL, getSymbol()));
+        for (YFField yff : fields) {
+            dataItemMap.put(yff, new YFDataItem(yff, getString(yff)));
+        }
+        return new YFQuote(getSymbolId(), dataItemMap);
+    }
+
+    private static long unscaled(long decimal) {
+        long zigzag = decimal >>> 4;
+        return (zigzag >>> 1) ^ -(zigzag & 1);
+    }
+
+    /**
+     * @return The offset of the field's value in the current row, -1 if it
+     * is "N/A" or not in the message
+     */
+    private int valueOffset(YFField yff) {
+        checkRow();
+        int col = columnIndex[yff.ordinal()];
+        return col < 0 ? -1 : valueOffsets[col];
+    }
+
+    private void checkRow() {
+        if (row < 0) {
+            throw new IllegalStateException("YFQuoteView is not on a row, call next() first");
+        }
+    }
+}
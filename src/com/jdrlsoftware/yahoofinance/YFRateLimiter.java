@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2012 Jim Merrell - JDRL Software
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jdrlsoftware.yahoofinance;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A token bucket that limits the rate of requests and adapts the rate to
+ * how the service responds.
+ * <p>
+ * Tokens are added at the current rate up to the burst size, and each
+ * request takes one, waiting if none is left.  The rate is adjusted by
+ * additive increase and multiplicative decrease: every successful request
+ * that responds within the target latency raises it a little, up to the
+ * maximum, while every throttled or failed request, and every response
+ * slower than the target, halves it, down to the minimum.  A limiter can be
+ * shared between threads.
+ *
+ * @author Jim Merrell - <www.jmerrell.com>
+ */
+public class YFRateLimiter {
+
+    public static final long DEFAULT_TARGET_LATENCY_MILLIS = 2000;
+
+    private static final double DECREASE_FACTOR = 0.5;
+
+    private final double minRate;
+    private final double maxRate;
+    private final double burst;
+    private final double increase;
+    private volatile long targetLatencyNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_TARGET_LATENCY_MILLIS);
+    private double rate;
+    private double tokens;
+    private long refilledAt;
+
+    /**
+     * Creates a limiter that does not adapt its rate.
+     *
+     * @param permitsPerSecond The rate of requests
+     * @param burst The number of requests that can be made at once after
+     * a quiet period
+     */
+    public YFRateLimiter(double permitsPerSecond, int burst) {
+        this(permitsPerSecond, permitsPerSecond, permitsPerSecond, burst);
+    }
+
+    /**
+     * @param minPermitsPerSecond The lowest rate the limiter slows down to
+     * @param initialPermitsPerSecond The starting rate
+     * @param maxPermitsPerSecond The highest rate the limiter speeds up to
+     * @param burst The number of requests that can be made at once after
+     * a quiet period
+     */
+    public YFRateLimiter(double minPermitsPerSecond, double initialPermitsPerSecond, double maxPermitsPerSecond,
+            int burst) {
+        if (minPermitsPerSecond <= 0 || minPermitsPerSecond > initialPermitsPerSecond
+                || initialPermitsPerSecond > maxPermitsPerSecond) {
+            throw new IllegalArgumentException("YFRateLimiter rates must be positive and min <= initial <= max");
+        }
+        if (burst < 1) {
+            throw new IllegalArgumentException("YFRateLimiter burst must be at least 1");
+        }
+        this.minRate = minPermitsPerSecond;
+        this.maxRate = maxPermitsPerSecond;
+        this.burst = burst;
+        // reach the maximum from the minimum in about 100 requests
+        this.increase = (maxPermitsPerSecond - minPermitsPerSecond) / 100;
+        this.rate = initialPermitsPerSecond;
+        this.tokens = burst;
+        this.refilledAt = System.nanoTime();
+    }
+
+    /**
+     * Sets the latency above which a response is taken as a sign of
+     * overload.
+     */
+    public void setTargetLatency(long duration, TimeUnit unit) {
+        if (duration <= 0) {
+            throw new IllegalArgumentException("YFRateLimiter target latency must be positive");
+        }
+        targetLatencyNanos = unit.toNanos(duration);
+    }
+
+    /**
+     * Takes a token, waiting until one is available.
+     *
+     * @throws InterruptedIOException if interrupted while waiting
+     */
+    public void acquire() throws InterruptedIOException {
+        long waitNanos;
+        synchronized (this) {
+            refill();
+            tokens -= 1;
+            // a negative balance is a reservation paid off as tokens refill
+            waitNanos = tokens >= 0 ? 0 : (long) (-tokens / rate * 1e9);
+        }
+        if (waitNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                synchronized (this) {
+                    tokens += 1;
+                }
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("YFRateLimiter interrupted while waiting");
+            }
+        }
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - refilledAt) / 1e9 * rate);
+        refilledAt = now;
+    }
+
+    /**
+     * Reports a successful request.
+     *
+     * @param latencyNanos The time the request took
+     */
+    public synchronized void onSuccess(long latencyNanos) {
+        refill();
+        if (latencyNanos > targetLatencyNanos) {
+            rate = Math.max(minRate, rate * DECREASE_FACTOR);
+        } else {
+            rate = Math.min(maxRate, rate + increase);
+        }
+    }
+
+    /**
+     * Reports a request that failed or was throttled.
+     */
+    public synchronized void onFailure() {
+        refill();
+        rate = Math.max(minRate, rate * DECREASE_FACTOR);
+    }
+
+    /**
+     * @return The current rate in requests per second
+     */
+    public synchronized double getRate() {
+        return rate;
+    }
+}
@@ -17,46 +17,272 @@
 
 package com.jdrlsoftware.yahoofinance;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
+ * Reads the csv data behind a URL line by line.  The connection is opened by
+ * a <code>YFTransport</code> on the first call to {@link #readLine()}.
+ * <p>
+ * The response is read as bytes into a pooled <code>ByteBuffer</code> and
+ * split into lines on the newline byte.  {@link #readCsvLine()} returns a
+ * line that is pure ASCII, as Yahoo! Finance csv data almost always is, as a
+ * <code>YFByteLine</code> view of the buffer, so it is neither decoded nor
+ * copied.  Only a line holding other characters is decoded, with the
+ * reader's charset.
  *
  * @author Jim Merrell - <www.jmerrell.com>
  */
 public class YFReader {
+
+    /**
+     * Transport used by readers that are not given one, shared so that its
+     * connections are reused.
+     */
+    private static final YFTransport DEFAULT_TRANSPORT = new YFHttpTransport();
+
+    /**
+     * Charset used by readers that are not given one.
+     */
+    public static final Charset DEFAULT_CHARSET = StandardCharsets.UTF_8;
+
+    private static final String ASCII_SAMPLE = "\r\n\",+-.0123456789ABCXYZabcxyz^ /:%";
     
     private URL aURL;
-    private BufferedReader csvReader;
+    private YFTransport transport;
+    private Charset charset = DEFAULT_CHARSET;
+    private ReadableByteChannel channel;
+
+    /**
+     * Holds the bytes read but not yet returned as lines between
+     * <code>position</code> and <code>limit</code>
+     */
+    private ByteBuffer buffer;
+    private final YFByteLine byteLine = new YFByteLine();
+    private boolean endOfStream;
+    private long bytesRead;
+
+    /**
+     * Receives the timings of the reader, null if not measuring
+     */
+    private YFMetricsListener metrics;
+    private long openedAt;
+    private long bodyNanos;
+    private boolean firstLineRead;
 
     public YFReader(URL aURL) {
+        this(aURL, DEFAULT_TRANSPORT);
+    }
+
+    public YFReader(URL aURL, YFTransport transport) {
         if (aURL == null) {
             throw new IllegalArgumentException("YFReader URL cannot be null");
         }
+        if (transport == null) {
+            throw new IllegalArgumentException("YFReader transport cannot be null");
+        }
         this.aURL = aURL;
+        this.transport = transport;
+    }
+
+    /**
+     * @return The transport used by readers that are not given one
+     */
+    public static YFTransport getDefaultTransport() {
+        return DEFAULT_TRANSPORT;
+    }
+
+    /**
+     * Sets the listener that receives the CONNECT, FIRST_BYTE and BODY
+     * timings and the number of bytes read.  Must be set before the first
+     * line is read.
+     *
+     * @param metrics The listener, or null to not measure
+     */
+    public void setMetricsListener(YFMetricsListener metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Sets the charset of the response, UTF-8 by default.  It must encode
+     * ASCII characters as single bytes, as UTF-8 and ISO-8859-1 do.
+     */
+    public void setCharset(Charset charset) {
+        checkCharset(charset);
+        this.charset = charset;
+    }
+
+    public Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the charset is null or does not
+     * encode ASCII as single bytes
+     */
+    static void checkCharset(Charset charset) {
+        if (charset == null) {
+            throw new IllegalArgumentException("YFReader charset cannot be null");
+        }
+        if (!charset.canEncode() || !Arrays.equals(ASCII_SAMPLE.getBytes(charset),
+                ASCII_SAMPLE.getBytes(StandardCharsets.US_ASCII))) {
+            throw new IllegalArgumentException("YFReader charset must be ASCII compatible: " + charset);
+        }
     }
 
-    private BufferedReader getReader() throws Exception {
-        if (csvReader == null) {
-            csvReader = new BufferedReader(new InputStreamReader(aURL.openStream()));
+    private void open() throws Exception {
+        long start = metrics != null ? System.nanoTime() : 0;
+        channel = Channels.newChannel(transport.open(aURL));
+        buffer = YFBufferPool.acquire();
+        buffer.flip();
+        if (metrics != null) {
+            openedAt = System.nanoTime();
+            metrics.stageCompleted(YFStage.CONNECT, openedAt - start);
         }
-        return csvReader;
     }
 
+    /**
+     * Reads the next line.
+     *
+     * @return The line without its line terminator, or null at the end of
+     * the response
+     */
     public String readLine() throws Exception {
-        return getReader().readLine();
+        CharSequence line = readCsvLine();
+        return line != null ? line.toString() : null;
+    }
+
+    /**
+     * Reads the next line without copying it when it is ASCII.  The line
+     * returned is only valid until the next line is read or the reader is
+     * closed.
+     *
+     * @return The line without its line terminator, or null at the end of
+     * the response
+     */
+    public CharSequence readCsvLine() throws Exception {
+        if (channel == null) {
+            open();
+        }
+        if (metrics == null) {
+            return nextLine();
+        }
+        long start = System.nanoTime();
+        CharSequence line = nextLine();
+        long end = System.nanoTime();
+        if (!firstLineRead) {
+            firstLineRead = true;
+            metrics.stageCompleted(YFStage.FIRST_BYTE, end - openedAt);
+        } else {
+            bodyNanos += end - start;
+        }
+        return line;
+    }
+
+    private CharSequence nextLine() throws IOException {
+        int scanned = 0;
+        boolean ascii = true;
+        while (true) {
+            byte[] data = buffer.array();
+            int start = buffer.position();
+            int limit = buffer.limit();
+            for (int i = start + scanned; i < limit; i++) {
+                byte b = data[i];
+                if (b == '\n') {
+                    buffer.position(i + 1);
+                    return line(data, start, i, ascii);
+                }
+                if (b < 0) {
+                    ascii = false;
+                }
+            }
+            scanned = limit - start;
+            if (endOfStream) {
+                if (start == limit) {
+                    return null;
+                }
+                buffer.position(limit);
+                return line(data, start, limit, ascii);
+            }
+            fill();
+        }
+    }
+
+    private CharSequence line(byte[] data, int start, int end, boolean ascii) {
+        if (end > start && data[end - 1] == '\r') {
+            end--;
+        }
+        if (!ascii) {
+            return new String(data, start, end - start, charset);
+        }
+        byteLine.set(data, start, end - start);
+        return byteLine;
+    }
+
+    /**
+     * Reads more of the response after the bytes not yet returned, growing
+     * the buffer for a line longer than it.
+     */
+    private void fill() throws IOException {
+        buffer.compact();
+        if (!buffer.hasRemaining()) {
+            ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+            buffer.flip();
+            larger.put(buffer);
+            YFBufferPool.release(buffer);
+            buffer = larger;
+        }
+        int n;
+        try {
+            n = channel.read(buffer);
+        } catch (YFException e) {
+            throw e;
+        } catch (ClosedByInterruptException e) {
+            throw new YFException("YFReader interrupted while reading URL: " + aURL, e);
+        } catch (InterruptedIOException e) {
+            if (!(e instanceof SocketTimeoutException)) {
+                Thread.currentThread().interrupt();
+                throw new YFException("YFReader interrupted while reading URL: " + aURL, e);
+            }
+            throw new YFTransientException("YFReader timed out reading URL: " + aURL, e);
+        } catch (IOException e) {
+            throw new YFTransientException("YFReader failed reading URL: " + aURL, e);
+        }
+        if (n < 0) {
+            endOfStream = true;
+        } else {
+            bytesRead += n;
+        }
+        buffer.flip();
     }
 
     public void close() {
+        if (channel == null) {
+            return;
+        }
+        if (metrics != null) {
+            metrics.stageCompleted(YFStage.BODY, bodyNanos);
+            metrics.bytesRead(bytesRead);
+        }
         try {
-            getReader().close();
+            channel.close();
         } catch (Exception e) {
             Logger.getLogger(YFReader.class.getName()).log(Level.WARNING, null, e);
         }
-        csvReader = null;
+        YFBufferPool.release(buffer);
+        channel = null;
+        buffer = null;
     }
     
 }
@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2012 Jim Merrell - JDRL Software
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.jdrlsoftware.yahoofinance;
+
+import java.io.UnsupportedEncodingException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * One request to Yahoo! Finance, prepared once for a group of symbols and the
+ * fields of a field plan.
+ * <p>
+ * A template holds the finished URL, with every symbol URL encoded (^DJI is
+ * sent as %5EDJI).  Templates are kept by a {@link Cache}, so a poller asking for the same
+ * symbols and fields again reuses the request instead of building it.  A
+ * template cannot be changed and can be shared between threads.
+ *
+ * @author Jim Merrell - <www.jmerrell.com>
+ */
+final class YFRequestTemplate {
+
+    private final String[] symbols;
+    private final URL url;
+
+    private YFRequestTemplate(String baseURL, String[] symbols, String fieldOptionParam) throws MalformedURLException {
+        this.symbols = symbols;
+        StringBuilder sb = new StringBuilder(baseURL.length() + symbols.length * 8 + 16);
+        sb.append(baseURL).append("?s=");
+        for (int i = 0; i < symbols.length; i++) {
+            if (i > 0) {
+                sb.append('+');
+            }
+            sb.append(encode(symbols[i]));
+        }
+        sb.append("&f=").append(fieldOptionParam);
+        this.url = new URL(sb.toString());
+    }
+
+    /**
+     * URL encodes a symbol, leaving '+' free as the symbol separator.
+     */
+    static String encode(String symbol) {
+        try {
+            return URLEncoder.encode(symbol, "UTF-8").replace("+", "%20");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("YFRequestTemplate UTF-8 not supported", e);
+        }
+    }
+
+    /**
+     * @return The symbols of the request, not to be changed
+     */
+    String[] symbols() {
+        return symbols;
+    }
+
+    URL getURL() {
+        return url;
+    }
+
+    /**
+     * The templates of one service URL, by symbol group and plan.  The
+     * templates used least recently are dropped once there are
+     * {@link #MAX_TEMPLATES}, so groups that are no longer polled do not
+     * keep their place.
+     */
+    static final class Cache {
+
+        /**
+         * Most templates kept
+         */
+        static final int MAX_TEMPLATES = 4096;
+
+        private final String baseURL;
+        private final Map<Key, YFRequestTemplate> templates;
+
+        Cache(String baseURL) {
+            this.baseURL = baseURL;
+            this.templates = new LinkedHashMap<Key, YFRequestTemplate>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Key, YFRequestTemplate> eldest) {
+                    return size() > MAX_TEMPLATES;
+                }
+            };
+        }
+
+        /**
+         * @return The template of the symbols and plan, built the first time
+         * they are asked for
+         */
+        YFRequestTemplate get(String[] symbols, YFFieldPlan plan) throws MalformedURLException {
+            String fieldOptionParam = plan.fieldOptionParam();
+            Key key = new Key(symbols, fieldOptionParam);
+            YFRequestTemplate template;
+            synchronized (templates) {
+                template = templates.get(key);
+            }
+            if (template == null) {
+                // keep a copy of the symbols, the caller may change its
+                // array; the hash already worked out is kept with it
+                String[] copy = symbols.clone();
+                template = new YFRequestTemplate(baseURL, copy, fieldOptionParam);
+                Key stored = new Key(copy, fieldOptionParam, key.hash);
+                synchronized (templates) {
+                    YFRequestTemplate existing = templates.get(stored);
+                    if (existing != null) {
+                        template = existing;
+                    } else {
+                        templates.put(stored, template);
+                    }
+                }
+            }
+            return template;
+        }
+
+        int size() {
+            synchronized (templates) {
+                return templates.size();
+            }
+        }
+    }
+
+    /**
+     * A symbol group and the fields fetched for it, compared by content, so
+     * that plans of the same fields share a template whether or not
+     * <code>YFFieldPlan.getPlan</code> kept the plan.  The hash is worked out
+     * once, from the hash codes each <code>String</code> already caches, and
+     * kept with the key.
+     */
+    private static final class Key {
+
+        private final String[] symbols;
+        private final String fieldOptionParam;
+        private final int hash;
+
+        Key(String[] symbols, String fieldOptionParam) {
+            this(symbols, fieldOptionParam, Arrays.hashCode(symbols) * 31 + fieldOptionParam.hashCode());
+        }
+
+        Key(String[] symbols, String fieldOptionParam, int hash) {
+            this.symbols = symbols;
+            this.fieldOptionParam = fieldOptionParam;
+            this.hash = hash;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return fieldOptionParam.equals(other.fieldOptionParam) && Arrays.equals(symbols, other.symbols);
+        }
+    }
+}
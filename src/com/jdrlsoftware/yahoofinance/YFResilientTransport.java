@@ -0,0 +1,417 @@
+/*
+ * Copyright (C) 2012 Jim Merrell - JDRL Software
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jdrlsoftware.yahoofinance;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A <code>YFTransport</code> that protects the service, and its callers, from
+ * overload and failures of another transport.
+ * <p>
+ * Each request first takes a token from the <code>YFRateLimiter</code>, if
+ * one is set.  A request that fails with a <code>YFTransientException</code>
+ * or any other <code>IOException</code> is retried after an exponential
+ * backoff with full jitter, or after the wait the service asked for; a
+ * <code>YFPermanentException</code> is thrown at once.  Failures are
+ * reported to the <code>YFCircuitBreaker</code>, if one is set, and while it
+ * is open requests are not sent at all.
+ * <p>
+ * Responses are streamed to the caller as they arrive; only opening the
+ * request is retried, since a body that fails halfway has already been
+ * partly read.  Such a failure is still reported to the limiter and the
+ * breaker.  While stale data is allowed, the body is copied as it is read,
+ * and once it has been read to the end it is kept as the last good
+ * response of its URL.  Those responses are kept up to
+ * {@link #setMaxStaleBytes a number of bytes}, the least recently used
+ * dropped first.  While the breaker is open, or once the retries are used
+ * up, the last good response is returned in place of an error.
+ *
+ * @author Jim Merrell - <www.jmerrell.com>
+ */
+public class YFResilientTransport implements YFTransport {
+
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+    public static final long DEFAULT_BASE_BACKOFF_MILLIS = 200;
+    public static final long DEFAULT_MAX_BACKOFF_MILLIS = 10000;
+    public static final long DEFAULT_MAX_STALE_BYTES = 16 * 1024 * 1024;
+
+    private final YFTransport transport;
+    private volatile YFRateLimiter rateLimiter;
+    private volatile YFCircuitBreaker circuitBreaker;
+    private volatile int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+    private volatile long baseBackoffMillis = DEFAULT_BASE_BACKOFF_MILLIS;
+    private volatile long maxBackoffMillis = DEFAULT_MAX_BACKOFF_MILLIS;
+    private volatile boolean serveStale = true;
+    private volatile long maxStaleBytes = DEFAULT_MAX_STALE_BYTES;
+    private final Map<String, byte[]> lastGoodResponses = new LinkedHashMap<String, byte[]>(16, 0.75f, true);
+    private long staleBytes;
+    private final Random random = new Random();
+    private final AtomicLong retryCount = new AtomicLong();
+    private final AtomicLong staleCount = new AtomicLong();
+
+    /**
+     * @param transport The transport that makes the requests
+     */
+    public YFResilientTransport(YFTransport transport) {
+        if (transport == null) {
+            throw new IllegalArgumentException("YFResilientTransport transport cannot be null");
+        }
+        this.transport = transport;
+    }
+
+    /**
+     * @param rateLimiter The limiter requests take a token from, or null for
+     * no limit
+     */
+    public void setRateLimiter(YFRateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    public YFRateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * @param circuitBreaker The breaker failures are reported to, or null for
+     * none
+     */
+    public void setCircuitBreaker(YFCircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    public YFCircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * @param maxAttempts The number of times a request is tried, 1 for no
+     * retries
+     */
+    public void setMaxAttempts(int maxAttempts) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("YFResilientTransport max attempts must be at least 1");
+        }
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * Sets the backoff before a retry: a random time up to the base doubled
+     * for every failed attempt, never more than the maximum.
+     */
+    public void setBackoff(long base, long max, TimeUnit unit) {
+        if (base <= 0 || max < base) {
+            throw new IllegalArgumentException("YFResilientTransport backoff must be positive and base <= max");
+        }
+        baseBackoffMillis = unit.toMillis(base);
+        maxBackoffMillis = unit.toMillis(max);
+    }
+
+    /**
+     * @param serveStale true to return the last good response of a URL when
+     * it cannot be fetched.  Each body is then copied as it is read, which
+     * costs one copy of every response; false streams the bodies untouched
+     * and drops the responses kept.
+     */
+    public void setServeStale(boolean serveStale) {
+        this.serveStale = serveStale;
+        if (!serveStale) {
+            synchronized (lastGoodResponses) {
+                lastGoodResponses.clear();
+                staleBytes = 0;
+            }
+        }
+    }
+
+    /**
+     * @param maxStaleBytes The most bytes of last good responses kept in
+     * memory; a body larger than this is not kept
+     */
+    public void setMaxStaleBytes(long maxStaleBytes) {
+        if (maxStaleBytes < 0) {
+            throw new IllegalArgumentException("YFResilientTransport max stale bytes cannot be negative");
+        }
+        this.maxStaleBytes = maxStaleBytes;
+        synchronized (lastGoodResponses) {
+            evictStale();
+        }
+    }
+
+    /**
+     * @return The number of retries made so far
+     */
+    public long getRetryCount() {
+        return retryCount.get();
+    }
+
+    /**
+     * @return The number of stale responses returned so far
+     */
+    public long getStaleCount() {
+        return staleCount.get();
+    }
+
+    @Override
+    public InputStream open(URL aURL) throws IOException {
+        String key = aURL.toString();
+        YFCircuitBreaker breaker = circuitBreaker;
+        YFRateLimiter limiter = rateLimiter;
+        IOException failure = null;
+
+        for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+            if (breaker != null && !breaker.allowRequest()) {
+                failure = new YFTransientException("YFResilientTransport circuit open for URL: " + aURL, failure);
+                break;
+            }
+            try {
+                // inside the try, so that a trial request interrupted here is reported to the breaker
+                if (limiter != null) {
+                    limiter.acquire();
+                }
+                long start = System.nanoTime();
+                InputStream body = transport.open(aURL);
+                if (limiter != null) {
+                    limiter.onSuccess(System.nanoTime() - start);
+                }
+                if (breaker != null) {
+                    breaker.onSuccess();
+                }
+                if (!serveStale) {
+                    return body;
+                }
+                return new StaleCopyInputStream(body, key, limiter, breaker);
+            } catch (YFPermanentException e) {
+                // the service answered, it is the request that is wrong
+                if (breaker != null) {
+                    breaker.onSuccess();
+                }
+                throw e;
+            } catch (SocketTimeoutException e) {
+                // a timeout, not an interrupt, so worth retrying
+                failure = e;
+            } catch (InterruptedIOException e) {
+                if (breaker != null) {
+                    breaker.onFailure();
+                }
+                throw e;
+            } catch (IOException e) {
+                failure = e;
+            } catch (RuntimeException e) {
+                // report the outcome, or a trial request would hold the breaker half open
+                if (breaker != null) {
+                    breaker.onFailure();
+                }
+                throw e;
+            }
+            if (limiter != null) {
+                limiter.onFailure();
+            }
+            if (breaker != null) {
+                breaker.onFailure();
+            }
+            if (attempt < maxAttempts) {
+                retryCount.incrementAndGet();
+                sleep(backoffMillis(attempt, failure));
+            }
+        }
+
+        if (serveStale) {
+            byte[] stale;
+            synchronized (lastGoodResponses) {
+                stale = lastGoodResponses.get(key);
+            }
+            if (stale != null) {
+                staleCount.incrementAndGet();
+                Logger.getLogger(YFResilientTransport.class.getName()).log(Level.WARNING,
+                        "YFResilientTransport serving stale response for URL: " + aURL, failure);
+                return new ByteArrayInputStream(stale);
+            }
+        }
+        if (failure instanceof YFException) {
+            throw failure;
+        }
+        throw new YFTransientException("YFResilientTransport request failed for URL: " + aURL, failure);
+    }
+
+    private long backoffMillis(int attempt, IOException failure) {
+        if (failure instanceof YFTransientException) {
+            long retryAfter = ((YFTransientException) failure).getRetryAfterMillis();
+            if (retryAfter >= 0) {
+                return Math.min(retryAfter, maxBackoffMillis);
+            }
+        }
+        long ceiling = Math.min(maxBackoffMillis, baseBackoffMillis << Math.min(attempt - 1, 30));
+        synchronized (random) {
+            return (long) (random.nextDouble() * ceiling);
+        }
+    }
+
+    private static void sleep(long millis) throws InterruptedIOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("YFResilientTransport interrupted while backing off");
+        }
+    }
+
+    /**
+     * Keeps a body as the last good response of its URL, dropping the least
+     * recently used responses past the byte limit.
+     */
+    private void keepStale(String key, byte[] body) {
+        synchronized (lastGoodResponses) {
+            byte[] previous = lastGoodResponses.put(key, body);
+            if (previous != null) {
+                staleBytes -= previous.length;
+            }
+            staleBytes += body.length;
+            evictStale();
+        }
+    }
+
+    private void evictStale() {
+        Iterator<byte[]> eldest = lastGoodResponses.values().iterator();
+        while (staleBytes > maxStaleBytes && eldest.hasNext()) {
+            staleBytes -= eldest.next().length;
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Passes a body through to the caller, copying it as it is read.  The
+     * copy is kept once the body has been read to the end, and dropped if it
+     * grows past the byte limit or the body is closed early.  A failure
+     * while reading is reported to the limiter and the breaker.
+     */
+    private final class StaleCopyInputStream extends FilterInputStream {
+
+        private final String key;
+        private final YFRateLimiter limiter;
+        private final YFCircuitBreaker breaker;
+        private ByteArrayOutputStream copy = new ByteArrayOutputStream();
+
+        StaleCopyInputStream(InputStream in, String key, YFRateLimiter limiter, YFCircuitBreaker breaker) {
+            super(in);
+            this.key = key;
+            this.limiter = limiter;
+            this.breaker = breaker;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b;
+            try {
+                b = in.read();
+            } catch (IOException e) {
+                throw readFailed(e);
+            }
+            if (b < 0) {
+                complete();
+            } else if (copy != null) {
+                copy.write(b);
+                checkSize();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n;
+            try {
+                n = in.read(b, off, len);
+            } catch (IOException e) {
+                throw readFailed(e);
+            }
+            if (n < 0) {
+                complete();
+            } else if (copy != null) {
+                copy.write(b, off, n);
+                checkSize();
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // the skipped bytes are not copied, so the copy is incomplete
+            copy = null;
+            return in.skip(n);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void mark(int readlimit) {
+        }
+
+        @Override
+        public void reset() throws IOException {
+            throw new IOException("YFResilientTransport response does not support reset");
+        }
+
+        @Override
+        public void close() throws IOException {
+            copy = null;
+            in.close();
+        }
+
+        private void checkSize() {
+            if (copy.size() > maxStaleBytes) {
+                copy = null;
+            }
+        }
+
+        private void complete() {
+            if (copy != null) {
+                keepStale(key, copy.toByteArray());
+                copy = null;
+            }
+        }
+
+        private IOException readFailed(IOException e) {
+            copy = null;
+            if (!(e instanceof InterruptedIOException) || e instanceof SocketTimeoutException) {
+                if (limiter != null) {
+                    limiter.onFailure();
+                }
+                if (breaker != null) {
+                    breaker.onFailure();
+                }
+            }
+            return e;
+        }
+    }
+}
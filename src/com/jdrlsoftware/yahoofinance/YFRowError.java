@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2012 Jim Merrell - JDRL Software
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jdrlsoftware.yahoofinance;
+
+/**
+ * A csv line, or a batch of symbols, that could not be loaded by
+ * <code>YFApi.retrieveQuoteResult</code>.
+ *
+ * @author Jim Merrell - <www.jmerrell.com>
+ */
+public class YFRowError {
+
+    private final String line;
+    private final String symbol;
+    private final Exception exception;
+    private final boolean retry;
+
+    public YFRowError(String line, String symbol, Exception exception, boolean retry) {
+        this.line = line;
+        this.symbol = symbol;
+        this.exception = exception;
+        this.retry = retry;
+    }
+
+    /**
+     * @return The csv line that could not be loaded, or null if a whole batch
+     * failed
+     */
+    public String getLine() {
+        return line;
+    }
+
+    /**
+     * @return The symbol of the line, or null if it could not be told
+     */
+    public String getSymbol() {
+        return symbol;
+    }
+
+    public Exception getException() {
+        return exception;
+    }
+
+    /**
+     * @return true if the error happened in the follow-up request for the
+     * symbols that failed the first time
+     */
+    public boolean isRetry() {
+        return retry;
+    }
+
+    @Override
+    public String toString() {
+        return (retry ? "retry " : "") + (symbol != null ? symbol : "?") + ": " + exception.getMessage()
+                + (line != null ? " [" + line + "]" : "");
+    }
+}
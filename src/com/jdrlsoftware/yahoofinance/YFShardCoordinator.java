@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) 2012 Jim Merrell - JDRL Software
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jdrlsoftware.yahoofinance;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Splits the symbols of a request between several <code>YFQuoteNode</code>s
+ * and merges their quotes into one result.
+ * <p>
+ * Symbols are assigned to nodes with a <code>YFHashRing</code>, so each node
+ * keeps fetching the same symbols from call to call.  When a node is added
+ * or removed, only the symbols that move to or from it change owner.  The
+ * nodes are asked concurrently.  If a node fails, it is logged and its
+ * symbols are asked of the nodes that would own them without it; only if
+ * every node fails is the first failure rethrown.  Each call works with the
+ * nodes there were when it started, so a node added or removed meanwhile
+ * only takes part from the next call on.
+ *
+ * @author Jim Merrell - <www.jmerrell.com>
+ */
+public class YFShardCoordinator {
+
+    private final YFHashRing ring;
+    private final Map<String, YFQuoteNode> nodes = new ConcurrentHashMap<String, YFQuoteNode>();
+
+    /**
+     * Asks the nodes, shared by all calls; idle threads end on their own
+     */
+    private final ExecutorService executor = Executors.newCachedThreadPool(YFExecutors.daemonThreads("YFShardCoordinator"));
+
+    public YFShardCoordinator() {
+        this(YFHashRing.DEFAULT_VIRTUAL_NODES);
+    }
+
+    /**
+     * @param virtualNodes The number of points of each node on the hash ring
+     */
+    public YFShardCoordinator(int virtualNodes) {
+        this.ring = new YFHashRing(virtualNodes);
+    }
+
+    /**
+     * Adds a node, which takes over its share of the symbols from the next
+     * call on.
+     */
+    public synchronized void addNode(YFQuoteNode node) {
+        if (node == null) {
+            throw new IllegalArgumentException("YFShardCoordinator node cannot be null");
+        }
+        if (nodes.containsKey(node.getName())) {
+            throw new IllegalArgumentException("YFShardCoordinator already has a node named " + node.getName());
+        }
+        nodes.put(node.getName(), node);
+        ring.addNode(node.getName());
+    }
+
+    /**
+     * Removes a node; its symbols are spread over the remaining nodes from
+     * the next call on.
+     *
+     * @return true if the node was removed
+     */
+    public synchronized boolean removeNode(String name) {
+        if (nodes.remove(name) == null) {
+            return false;
+        }
+        ring.removeNode(name);
+        return true;
+    }
+
+    public Collection<YFQuoteNode> getNodes() {
+        return Collections.unmodifiableCollection(nodes.values());
+    }
+
+    /**
+     * @return The name of the node that owns the symbol, or null if there
+     * are no nodes
+     */
+    public String getOwner(String symbol) {
+        return ring.getOwner(symbol);
+    }
+
+    /**
+     * @return The symbols each node is asked for
+     */
+    public Map<String, List<String>> getAssignment(String[] tickerSymbols) {
+        return ring.partition(tickerSymbols);
+    }
+
+    /**
+     * Retrieves the quote information for the given symbols from the nodes
+     * that own them.
+     *
+     * @param tickerSymbols Ticker symbols as defined by Yahoo! Finance
+     * @param fieldOptions The fields that will be retrieved from Yahoo! Finance
+     * @return The quotes of every node, by symbol, which cannot be modified
+     * @throws YFPartialResultException if some symbols failed on every node,
+     * with the quotes of the others
+     * @throws Exception the first failure, if every node asked fails
+     */
+    public Map<String, YFQuote> retrieveQuotes(String[] tickerSymbols, final YFField[] fieldOptions) throws Exception {
+
+        if (tickerSymbols == null || tickerSymbols.length == 0) {
+            throw new IllegalArgumentException("Yahoo Finance ticker symbols cannot be empty/null");
+        }
+
+        if (fieldOptions == null || fieldOptions.length == 0) {
+            throw new IllegalArgumentException("Yahoo Finance field options cannot be empty/null");
+        }
+
+        // the ring and nodes of this call, which later changes do not affect
+        YFHashRing callRing;
+        Map<String, YFQuoteNode> callNodes;
+        synchronized (this) {
+            callRing = ring.copy();
+            callNodes = new HashMap<String, YFQuoteNode>(nodes);
+        }
+        if (callNodes.isEmpty()) {
+            throw new IllegalStateException("YFShardCoordinator has no nodes");
+        }
+
+        Map<String, YFQuote> quotes = new HashMap<String, YFQuote>();
+        Set<String> failedNodes = new HashSet<String>();
+        Exception firstFailure = null;
+        String[] remaining = tickerSymbols;
+        while (remaining.length > 0 && failedNodes.size() < callRing.getNodes().size()) {
+            Map<String, List<String>> parts = callRing.partition(remaining, failedNodes);
+            List<String> owners = new ArrayList<String>(parts.keySet());
+            List<String> retry = new ArrayList<String>();
+
+            List<Future<Map<String, YFQuote>>> futures = new ArrayList<Future<Map<String, YFQuote>>>(owners.size());
+            try {
+                for (String owner : owners) {
+                    final YFQuoteNode node = callNodes.get(owner);
+                    final List<String> part = parts.get(owner);
+                    futures.add(executor.submit(new Callable<Map<String, YFQuote>>() {
+                        @Override
+                        public Map<String, YFQuote> call() throws Exception {
+                            return node.retrieveQuotes(part.toArray(new String[part.size()]), fieldOptions);
+                        }
+                    }));
+                }
+                for (int i = 0; i < futures.size(); i++) {
+                    try {
+                        quotes.putAll(futures.get(i).get());
+                    } catch (ExecutionException e) {
+                        Exception cause = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                        Logger.getLogger(YFShardCoordinator.class.getName()).log(Level.WARNING,
+                                "YFShardCoordinator node " + owners.get(i) + " failed", cause);
+                        if (firstFailure == null) {
+                            firstFailure = cause;
+                        }
+                        failedNodes.add(owners.get(i));
+                        if (cause instanceof YFPartialResultException) {
+                            // keep what the node did fetch
+                            YFPartialResultException partial = (YFPartialResultException) cause;
+                            quotes.putAll(partial.getQuotes());
+                            retry.addAll(partial.getFailedSymbols());
+                        } else {
+                            retry.addAll(parts.get(owners.get(i)));
+                        }
+                    }
+                }
+            } finally {
+                // only still running if this call was interrupted
+                for (Future<Map<String, YFQuote>> future : futures) {
+                    future.cancel(true);
+                }
+            }
+            remaining = retry.toArray(new String[retry.size()]);
+        }
+        if (quotes.isEmpty() && firstFailure != null) {
+            throw firstFailure;
+        }
+        if (remaining.length > 0) {
+            YFPartialResultException partial = new YFPartialResultException("YFShardCoordinator " + remaining.length
+                    + " symbols failed on every node", Arrays.asList(remaining), firstFailure);
+            partial.setQuotes(quotes);
+            throw partial;
+        }
+        return Collections.unmodifiableMap(quotes);
+    }
+
+    /**
+     * Retrieves the quote information for the given symbols from the nodes
+     * that own them into one columnar snapshot.
+     *
+     * @param tickerSymbols Ticker symbols as defined by Yahoo! Finance
+     * @param fieldOptions The fields that will be retrieved from Yahoo! Finance
+     * @return The snapshot of the quotes of every node
+     * @throws YFPartialResultException if some symbols failed on every node,
+     * with the snapshot of the others
+     * @throws Exception the first failure, if every node asked fails
+     */
+    public YFColumnarSnapshot retrieveSnapshot(String[] tickerSymbols, YFField[] fieldOptions) throws Exception {
+        YFField[] fields = YFFieldPlan.getPlan(fieldOptions).getFields();
+        try {
+            return YFColumnarSnapshot.fromQuotes(retrieveQuotes(tickerSymbols, fieldOptions).values(), fields);
+        } catch (YFPartialResultException e) {
+            e.setSnapshot(YFColumnarSnapshot.fromQuotes(e.getQuotes().values(), fields));
+            throw e;
+        }
+    }
+}
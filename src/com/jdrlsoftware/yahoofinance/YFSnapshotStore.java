@@ -0,0 +1,246 @@
+/*
+ * Copyright (C) 2012 Jim Merrell - JDRL Software
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jdrlsoftware.yahoofinance;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Holds the latest quote of each symbol as a series of immutable, versioned
+ * snapshots.
+ * <p>
+ * Readers take the current snapshot with {@link #current()} and read it
+ * without locking; a reader that keeps the snapshot sees one consistent
+ * version across any number of lookups, whatever is published meanwhile.
+ * Writers {@link #publish} quotes by building the next snapshot from the
+ * current one and swapping it in with a compare-and-set, retrying if another
+ * writer got there first.
+ * <p>
+ * A snapshot is a two level array indexed by the symbol id of the default
+ * <code>YFSymbolDictionary</code>: a directory of fixed size chunks of
+ * quotes.  Publishing copies the directory and only the chunks holding a
+ * symbol whose quote changed; every other chunk is shared with the previous
+ * snapshot.  A quote loaded from the same csv line into the same fields as
+ * the one it replaces counts as unchanged; the same line loaded with other
+ * fields, such as an added derived field, replaces it.
+ * <p>
+ * A quote holding fewer fields than the stored one, such as a refresh of
+ * only the fields that expired, is merged into it field by field, so the
+ * fields it does not hold keep their latest values.
+ *
+ * @author Jim Merrell - <www.jmerrell.com>
+ */
+public class YFSnapshotStore {
+
+    private static final int CHUNK_BITS = 8;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private final AtomicReference<Snapshot> current = new AtomicReference<Snapshot>(Snapshot.EMPTY);
+
+    /**
+     * An immutable version of the store.
+     */
+    public static final class Snapshot {
+
+        static final Snapshot EMPTY = new Snapshot(0, new YFQuote[0][], 0);
+
+        private final long version;
+        private final YFQuote[][] chunks;
+        private final int size;
+
+        Snapshot(long version, YFQuote[][] chunks, int size) {
+            this.version = version;
+            this.chunks = chunks;
+            this.size = size;
+        }
+
+        /**
+         * @return The version, one more than the snapshot it replaced
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        /**
+         * @return The number of symbols with a quote
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * @param symbolId The id of the symbol in the default
+         * <code>YFSymbolDictionary</code>
+         * @return The quote of the symbol, or null
+         */
+        public YFQuote getQuote(int symbolId) {
+            if (symbolId < 0) {
+                return null;
+            }
+            int chunk = symbolId >>> CHUNK_BITS;
+            if (chunk >= chunks.length || chunks[chunk] == null) {
+                return null;
+            }
+            return chunks[chunk][symbolId & CHUNK_MASK];
+        }
+
+        /**
+         * @return The quote of the symbol, or null
+         */
+        public YFQuote getQuote(String symbol) {
+            return getQuote(YFSymbolDictionary.getDefault().lookup(symbol));
+        }
+
+        /**
+         * @return The quotes, in symbol id order
+         */
+        public List<YFQuote> getQuotes() {
+            List<YFQuote> quotes = new ArrayList<YFQuote>(size);
+            for (YFQuote[] chunk : chunks) {
+                if (chunk != null) {
+                    for (YFQuote quote : chunk) {
+                        if (quote != null) {
+                            quotes.add(quote);
+                        }
+                    }
+                }
+            }
+            return quotes;
+        }
+    }
+
+    /**
+     * @return The current snapshot, which does not change
+     */
+    public Snapshot current() {
+        return current.get();
+    }
+
+    public long getVersion() {
+        return current.get().version;
+    }
+
+    /**
+     * @return The latest quote of the symbol, or null
+     */
+    public YFQuote getQuote(String symbol) {
+        return current.get().getQuote(symbol);
+    }
+
+    /**
+     * @return The latest quote of the symbol, or null
+     */
+    public YFQuote getQuote(int symbolId) {
+        return current.get().getQuote(symbolId);
+    }
+
+    /**
+     * Publishes quotes, replacing the quotes of the same symbols, or the
+     * fields they hold if they hold fewer.  Quotes without a symbol are
+     * ignored.
+     *
+     * @return The snapshot holding the quotes; the current one, with the
+     * same version, if none of them changed
+     */
+    public Snapshot publish(Collection<YFQuote> quotes) {
+        if (quotes == null) {
+            throw new IllegalArgumentException("YFSnapshotStore quotes cannot be null");
+        }
+        while (true) {
+            Snapshot previous = current.get();
+            Snapshot next = apply(previous, quotes);
+            if (next == previous || current.compareAndSet(previous, next)) {
+                return next;
+            }
+        }
+    }
+
+    private static Snapshot apply(Snapshot previous, Collection<YFQuote> quotes) {
+        YFQuote[][] chunks = previous.chunks;
+        boolean[] copied = null;
+        int size = previous.size;
+        for (YFQuote quote : quotes) {
+            int symbolId = quote.getSymbolId();
+            if (symbolId < 0) {
+                continue;
+            }
+            int chunk = symbolId >>> CHUNK_BITS;
+            int slot = symbolId & CHUNK_MASK;
+            YFQuote old = chunk < chunks.length && chunks[chunk] != null ? chunks[chunk][slot] : null;
+            if (old == quote || (old != null && old.isSameLoad(quote))) {
+                continue;
+            }
+            YFQuote latest = old == null || quote.containsFields(old) ? quote : merge(old, quote);
+            if (copied == null || chunk >= chunks.length) {
+                // copy the directory, once, growing it for new symbol ids
+                YFQuote[][] directory = new YFQuote[Math.max(chunks.length, chunk + 1)][];
+                System.arraycopy(chunks, 0, directory, 0, chunks.length);
+                chunks = directory;
+                boolean[] wasCopied = copied;
+                copied = new boolean[chunks.length];
+                if (wasCopied != null) {
+                    System.arraycopy(wasCopied, 0, copied, 0, wasCopied.length);
+                }
+            }
+            if (!copied[chunk]) {
+                chunks[chunk] = chunks[chunk] != null ? chunks[chunk].clone() : new YFQuote[CHUNK_SIZE];
+                copied[chunk] = true;
+            }
+            chunks[chunk][slot] = latest;
+            if (old == null) {
+                size++;
+            }
+        }
+        if (copied == null) {
+            return previous;
+        }
+        return new Snapshot(previous.version + 1, chunks, size);
+    }
+
+    /**
+     * @return A quote holding the fields of both quotes, those of
+     * <code>quote</code> where they both hold a field
+     */
+    private static YFQuote merge(YFQuote old, YFQuote quote) {
+        EnumMap<YFField, YFDataItem> dataItemMap = new EnumMap<YFField, YFDataItem>(YFField.class);
+        for (YFField yff : old.getFields()) {
+            dataItemMap.put(yff, old.getDataItem(yff));
+        }
+        for (YFField yff : quote.getFields()) {
+            dataItemMap.put(yff, quote.getDataItem(yff));
+        }
+        return new YFQuote(quote.getId(), dataItemMap);
+    }
+
+    /**
+     * Removes every quote, publishing an empty snapshot.
+     */
+    public Snapshot clear() {
+        while (true) {
+            Snapshot previous = current.get();
+            Snapshot next = new Snapshot(previous.version + 1, new YFQuote[0][], 0);
+            if (current.compareAndSet(previous, next)) {
+                return next;
+            }
+        }
+    }
+}
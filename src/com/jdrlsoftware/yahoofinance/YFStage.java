@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2012 Jim Merrell - JDRL Software
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jdrlsoftware.yahoofinance;
+
+/**
+ * The stages of a request timed by a <code>YFMetricsListener</code>.
+ *
+ * @author Jim Merrell - <www.jmerrell.com>
+ */
+public enum YFStage {
+
+    /**
+     * Opening the response with the transport: name lookup, connecting,
+     * sending the request and waiting for the response headers
+     */
+    CONNECT,
+    /**
+     * From the response being opened until its first line has been read
+     */
+    FIRST_BYTE,
+    /**
+     * Reading the rest of the response, not counting the time spent on the
+     * lines read
+     */
+    BODY,
+    /**
+     * Tokenizing the lines and loading them, including handing them to the
+     * caller
+     */
+    PARSE
+}
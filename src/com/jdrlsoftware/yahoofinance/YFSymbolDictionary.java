@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2012 Jim Merrell - JDRL Software
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jdrlsoftware.yahoofinance;
+
+import java.util.Arrays;
+
+/**
+ * Maps ticker symbols to dense int ids, starting at 0, and holds one
+ * <code>String</code> per symbol.
+ * <p>
+ * The api looks up the symbol of every csv line here, straight from the
+ * characters of the line, so a symbol seen before needs neither a new
+ * <code>String</code> nor a <code>String</code> hash.  Quotes, caches and
+ * maps then share the one symbol instance and can be keyed by its id, for
+ * example in a <code>YFIntMap</code>.  Ids are never reused or removed, so
+ * the dictionary grows with the number of distinct symbols seen.
+ * <p>
+ * Lookups of known symbols do not lock.  Adding a symbol locks the
+ * dictionary.
+ *
+ * @author Jim Merrell - <www.jmerrell.com>
+ */
+public class YFSymbolDictionary {
+
+    private static final YFSymbolDictionary DEFAULT = new YFSymbolDictionary();
+
+    /**
+     * Symbols by id.  A reader can see an id in <code>table</code> before the
+     * symbol is visible here, in which case it retries under the lock.
+     */
+    private volatile String[] symbols = new String[1024];
+
+    /**
+     * Open addressing hash table of id + 1, 0 for an empty slot.  Replaced,
+     * not resized in place, when it grows.
+     */
+    private volatile int[] table = new int[2048];
+    private volatile int size;
+
+    /**
+     * @return The dictionary used throughout the api
+     */
+    public static YFSymbolDictionary getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * @return The id of the symbol, adding it if not yet known
+     */
+    public int getId(String symbol) {
+        if (symbol == null) {
+            throw new IllegalArgumentException("YFSymbolDictionary symbol cannot be null");
+        }
+        return getId(symbol, 0, symbol.length());
+    }
+
+    /**
+     * @return The id of the symbol held in <code>chars</code> from
+     * <code>start</code> to <code>end</code>, adding it if not yet known
+     */
+    public int getId(CharSequence chars, int start, int end) {
+        int id = lookup(chars, start, end);
+        if (id >= 0) {
+            return id;
+        }
+        return add(chars, start, end);
+    }
+
+    /**
+     * @return The id of the symbol, or -1 if not known
+     */
+    public int lookup(String symbol) {
+        if (symbol == null) {
+            return -1;
+        }
+        return lookup(symbol, 0, symbol.length());
+    }
+
+    /**
+     * @return The id of the symbol held in <code>chars</code> from
+     * <code>start</code> to <code>end</code>, or -1 if not known
+     */
+    public int lookup(CharSequence chars, int start, int end) {
+        int[] t = table;
+        String[] s = symbols;
+        int mask = t.length - 1;
+        for (int slot = hash(chars, start, end) & mask;; slot = (slot + 1) & mask) {
+            int entry = t[slot];
+            if (entry == 0) {
+                return -1;
+            }
+            int id = entry - 1;
+            String symbol = id < s.length ? s[id] : null;
+            if (symbol == null) {
+                // added by another thread and not yet visible
+                synchronized (this) {
+                    return find(chars, start, end);
+                }
+            }
+            if (matches(symbol, chars, start, end)) {
+                return id;
+            }
+        }
+    }
+
+    /**
+     * @return The symbol of an id
+     * @throws IndexOutOfBoundsException if the id is not known
+     */
+    public String getSymbol(int id) {
+        if (id < 0 || id >= size) {
+            throw new IndexOutOfBoundsException("YFSymbolDictionary unknown symbol id " + id);
+        }
+        String symbol = symbols[id];
+        if (symbol == null) {
+            synchronized (this) {
+                symbol = symbols[id];
+            }
+        }
+        return symbol;
+    }
+
+    /**
+     * @return The dictionary's instance of the symbol, added if not yet known
+     */
+    public String intern(String symbol) {
+        return getSymbol(getId(symbol));
+    }
+
+    /**
+     * @return The number of symbols known
+     */
+    public int size() {
+        return size;
+    }
+
+    private synchronized int add(CharSequence chars, int start, int end) {
+        int id = find(chars, start, end);
+        if (id >= 0) {
+            return id;
+        }
+        id = size;
+        if (id == symbols.length) {
+            symbols = Arrays.copyOf(symbols, id * 2);
+        }
+        symbols[id] = chars.subSequence(start, end).toString();
+        if ((id + 1) * 2 > table.length) {
+            rehash(table.length * 2);
+        }
+        insert(table, hash(chars, start, end), id);
+        size = id + 1;
+        return id;
+    }
+
+    /**
+     * Looks up a symbol while holding the lock.
+     */
+    private int find(CharSequence chars, int start, int end) {
+        int[] t = table;
+        int mask = t.length - 1;
+        for (int slot = hash(chars, start, end) & mask;; slot = (slot + 1) & mask) {
+            int entry = t[slot];
+            if (entry == 0) {
+                return -1;
+            }
+            if (matches(symbols[entry - 1], chars, start, end)) {
+                return entry - 1;
+            }
+        }
+    }
+
+    private void rehash(int capacity) {
+        int[] newTable = new int[capacity];
+        for (int id = 0; id < size; id++) {
+            String symbol = symbols[id];
+            insert(newTable, hash(symbol, 0, symbol.length()), id);
+        }
+        table = newTable;
+    }
+
+    private static void insert(int[] t, int hash, int id) {
+        int mask = t.length - 1;
+        int slot = hash & mask;
+        while (t[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        t[slot] = id + 1;
+    }
+
+    private static int hash(CharSequence chars, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + chars.charAt(i);
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean matches(String symbol, CharSequence chars, int start, int end) {
+        int length = end - start;
+        if (symbol.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (symbol.charAt(i) != chars.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
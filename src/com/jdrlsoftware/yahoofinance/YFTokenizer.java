@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2012 Jim Merrell - JDRL Software
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jdrlsoftware.yahoofinance;
+
+import java.io.IOException;
+
+/**
+ * Splits a line of csv data from Yahoo! Finance into tokens.
+ * <p>
+ * The line is scanned in place and only the start/end offsets of each token
+ * are recorded, so a tokenizer can be reused for every line of a response
+ * without allocating. A token is turned into a <code>String</code> only when
+ * {@link #getToken(int)} is called. Text inside double quotes is taken as a
+ * single token, even if it contains commas. Empty tokens (and empty quoted
+ * strings) are returned as "N/A". A tokenizer is not thread safe.
+ * <p>
+ * Every comma separates two tokens.  This differs from the tokenizing done
+ * by earlier versions for lines Yahoo! Finance does not send in practice: a
+ * leading comma now gives a leading empty token instead of none, each of
+ * several commas in a row gives an empty token instead of one per pair, and
+ * text between a closing quote and the next comma is dropped instead of
+ * becoming a token of its own.
+ *
+ * @author Jim Merrell - <www.jmerrell.com>
+ */
+public class YFTokenizer {
+
+    /**
+     * Value used for empty tokens, the same value Yahoo! Finance uses for
+     * unavailable data.
+     */
+    public static final String EMPTY_TOKEN = "N/A";
+
+    private static final char DELIM_CHAR = ',';
+    private static final char QUOTE_CHAR = '"';
+
+    private CharSequence line;
+    private int tokenCount;
+    private int[] tokenStarts = new int[16];
+    private int[] tokenEnds = new int[16];
+
+    /**
+     * Tokenizes the given line, replacing the result of the previous line.
+     *
+     * @param quoteLine A line of csv data
+     * @return The number of tokens found
+     * @throws IOException if a quoted token is missing its end quote
+     */
+    public int tokenize(CharSequence quoteLine) throws IOException {
+        if (quoteLine == null) {
+            throw new IllegalArgumentException("YFTokenizer cannot accept null parameter");
+        }
+        line = quoteLine;
+        tokenCount = 0;
+        int length = quoteLine.length();
+        if (length == 0) {
+            //empty quote line??
+            return 0;
+        }
+        int pos = 0;
+        while (true) {
+            if (pos < length && quoteLine.charAt(pos) == QUOTE_CHAR) {
+                // take anything inside quotes as single field
+                int end = pos + 1;
+                while (end < length && quoteLine.charAt(end) != QUOTE_CHAR) {
+                    end++;
+                }
+                if (end == length) {
+                    throw new IOException("Missing end quote!");
+                }
+                addToken(pos + 1, end);
+                pos = end + 1;
+                while (pos < length && quoteLine.charAt(pos) != DELIM_CHAR) {
+                    pos++;
+                }
+            } else {
+                // take anything up to a comma or end
+                int start = pos;
+                while (pos < length && quoteLine.charAt(pos) != DELIM_CHAR) {
+                    pos++;
+                }
+                addToken(start, pos);
+            }
+            if (pos == length) {
+                return tokenCount;
+            }
+            pos++;
+        }
+    }
+
+    private void addToken(int start, int end) {
+        if (tokenCount == tokenStarts.length) {
+            int[] starts = new int[tokenCount * 2];
+            int[] ends = new int[tokenCount * 2];
+            System.arraycopy(tokenStarts, 0, starts, 0, tokenCount);
+            System.arraycopy(tokenEnds, 0, ends, 0, tokenCount);
+            tokenStarts = starts;
+            tokenEnds = ends;
+        }
+        tokenStarts[tokenCount] = start;
+        tokenEnds[tokenCount] = end;
+        tokenCount++;
+    }
+
+    /**
+     * @return The line that was last tokenized
+     */
+    public CharSequence getLine() {
+        return line;
+    }
+
+    public int getTokenCount() {
+        return tokenCount;
+    }
+
+    /**
+     * @return Offset in the line of the first character of the token, not
+     * including any quote
+     */
+    public int getTokenStart(int tokenIdx) {
+        checkIndex(tokenIdx);
+        return tokenStarts[tokenIdx];
+    }
+
+    /**
+     * @return Offset in the line after the last character of the token, not
+     * including any quote
+     */
+    public int getTokenEnd(int tokenIdx) {
+        checkIndex(tokenIdx);
+        return tokenEnds[tokenIdx];
+    }
+
+    public boolean isEmpty(int tokenIdx) {
+        checkIndex(tokenIdx);
+        return tokenStarts[tokenIdx] == tokenEnds[tokenIdx];
+    }
+
+    /**
+     * Materializes a token.
+     *
+     * @param tokenIdx Index of the token in the line
+     * @return The token value, or "N/A" for an empty token
+     */
+    public String getToken(int tokenIdx) {
+        checkIndex(tokenIdx);
+        int start = tokenStarts[tokenIdx];
+        int end = tokenEnds[tokenIdx];
+        if (start == end) {
+            return EMPTY_TOKEN;
+        }
+        return line.subSequence(start, end).toString();
+    }
+
+    private void checkIndex(int tokenIdx) {
+        if (tokenIdx < 0 || tokenIdx >= tokenCount) {
+            throw new IndexOutOfBoundsException("YFTokenizer token index " + tokenIdx + " out of range, count=" + tokenCount);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2012 Jim Merrell - JDRL Software
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jdrlsoftware.yahoofinance;
+
+/**
+ * A failure that may not happen again, such as a timeout, a refused
+ * connection, a server error or the service throttling requests.
+ *
+ * @author Jim Merrell - <www.jmerrell.com>
+ */
+public class YFTransientException extends YFException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long retryAfterMillis;
+
+    public YFTransientException(String message) {
+        this(message, -1, -1, null);
+    }
+
+    public YFTransientException(String message, Throwable cause) {
+        this(message, -1, -1, cause);
+    }
+
+    /**
+     * @param message The detail message
+     * @param statusCode The HTTP status of the response, -1 if none
+     * @param retryAfterMillis How long the service asked to wait before
+     * retrying, -1 if it did not say
+     * @param cause The cause, or null
+     */
+    public YFTransientException(String message, int statusCode, long retryAfterMillis, Throwable cause) {
+        super(message, statusCode, cause);
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    /**
+     * @return How long the service asked to wait before retrying, -1 if it
+     * did not say
+     */
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+}
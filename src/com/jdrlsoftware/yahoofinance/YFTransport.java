@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2012 Jim Merrell - JDRL Software
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jdrlsoftware.yahoofinance;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+
+/**
+ * Fetches the csv data behind a URL for a <code>YFReader</code>.
+ * <p>
+ * Implementations must be safe to use from several threads at the same time.
+ *
+ * @author Jim Merrell - <www.jmerrell.com>
+ * @see YFHttpTransport
+ * @see YFFixtureTransport
+ */
+public interface YFTransport {
+
+    /**
+     * Requests the URL and returns the body of the response.
+     *
+     * @param aURL The URL to request
+     * @return The response body, closed by the caller
+     * @throws IOException if the request fails
+     */
+    InputStream open(URL aURL) throws IOException;
+}
@@ -0,0 +1,315 @@
+/*
+ * Copyright (C) 2012 Jim Merrell - JDRL Software
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jdrlsoftware.yahoofinance;
+
+/**
+ * The kind of value Yahoo! Finance returns for a <code>YFField</code>, and how
+ * to convert its text into a primitive.
+ * <p>
+ * Values that are not available ("N/A", empty or unparseable) convert to
+ * <code>Double.NaN</code> or {@link #NA_LONG}.
+ *
+ * @author Jim Merrell - <www.jmerrell.com>
+ */
+public enum YFValueType {
+
+    /**
+     * A plain decimal number such as a price or ratio, e.g. "209.19" or "-0.35"
+     */
+    PRICE,
+    /**
+     * A whole number such as a volume or size, e.g. "4213980"
+     */
+    INTEGER,
+    /**
+     * A percentage in percent points, e.g. "+1.23%" is 1.23.  For combined
+     * values such as "-0.35 - -0.17%" the last part is used.
+     */
+    PERCENT,
+    /**
+     * A number abbreviated with a K, M, B or T suffix, e.g. "12.3B"
+     */
+    MAGNITUDE,
+    /**
+     * A date in M/d/yyyy format, as milliseconds since the epoch at midnight
+     * UTC of that date
+     */
+    DATE,
+    /**
+     * A time of day such as "4:00pm", as milliseconds since midnight
+     */
+    TIME,
+    /**
+     * Text that has no numeric value
+     */
+    TEXT;
+
+    /**
+     * Long value of data that is not available.
+     */
+    public static final long NA_LONG = Long.MIN_VALUE;
+
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    /**
+     * Exact powers of ten; a mantissa of at most 15 digits divided by one of
+     * these gives a correctly rounded double.
+     */
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+    public boolean isNumeric() {
+        return this != TEXT;
+    }
+
+    public double parseDouble(CharSequence value) {
+        return parseDouble(value, 0, value.length());
+    }
+
+    /**
+     * Converts the text between <code>start</code> and <code>end</code> to a
+     * double.
+     *
+     * @return The value, or <code>Double.NaN</code> if it is not available
+     */
+    public double parseDouble(CharSequence value, int start, int end) {
+        switch (this) {
+            case PRICE:
+            case INTEGER:
+                return parseDecimal(value, start, end);
+            case PERCENT:
+                return parsePercent(value, start, end);
+            case MAGNITUDE:
+                return parseMagnitude(value, start, end);
+            case DATE:
+            case TIME:
+                long l = parseLong(value, start, end);
+                return l == NA_LONG ? Double.NaN : l;
+            default:
+                return Double.NaN;
+        }
+    }
+
+    public long parseLong(CharSequence value) {
+        return parseLong(value, 0, value.length());
+    }
+
+    /**
+     * Converts the text between <code>start</code> and <code>end</code> to a
+     * long.  Decimal values are rounded to the nearest whole number.
+     *
+     * @return The value, or {@link #NA_LONG} if it is not available
+     */
+    public long parseLong(CharSequence value, int start, int end) {
+        switch (this) {
+            case DATE:
+                return parseDate(value, start, end);
+            case TIME:
+                return parseTime(value, start, end);
+            case TEXT:
+                return NA_LONG;
+            default:
+                double d = parseDouble(value, start, end);
+                return Double.isNaN(d) ? NA_LONG : Math.round(d);
+        }
+    }
+
+    static double parseDecimal(CharSequence value, int start, int end) {
+        while (start < end && value.charAt(start) == ' ') {
+            start++;
+        }
+        while (end > start && value.charAt(end - 1) == ' ') {
+            end--;
+        }
+        if (start == end) {
+            return Double.NaN;
+        }
+        int pos = start;
+        boolean negative = false;
+        char c = value.charAt(pos);
+        if (c == '-' || c == '+') {
+            negative = c == '-';
+            pos++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = -1;
+        for (; pos < end; pos++) {
+            c = value.charAt(pos);
+            if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+                if (fractionDigits >= 0) {
+                    fractionDigits++;
+                }
+            } else if (c == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+            } else if ((c == 'e' || c == 'E') && digits > 0) {
+                return parseSlow(value, start, end);
+            } else {
+                // "N/A" and other text
+                return Double.NaN;
+            }
+        }
+        if (digits == 0) {
+            return Double.NaN;
+        }
+        if (digits > 15) {
+            return parseSlow(value, start, end);
+        }
+        double result = fractionDigits > 0 ? mantissa / POWERS_OF_TEN[fractionDigits] : mantissa;
+        return negative ? -result : result;
+    }
+
+    private static double parseSlow(CharSequence value, int start, int end) {
+        try {
+            return Double.parseDouble(value.subSequence(start, end).toString());
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    private static double parsePercent(CharSequence value, int start, int end) {
+        for (int i = end - 2; i > start; i--) {
+            if (value.charAt(i) == '-' && value.charAt(i - 1) == ' ' && value.charAt(i + 1) == ' ') {
+                start = i + 1;
+                break;
+            }
+        }
+        while (end > start && value.charAt(end - 1) == ' ') {
+            end--;
+        }
+        if (end > start && value.charAt(end - 1) == '%') {
+            end--;
+        }
+        return parseDecimal(value, start, end);
+    }
+
+    private static double parseMagnitude(CharSequence value, int start, int end) {
+        while (end > start && value.charAt(end - 1) == ' ') {
+            end--;
+        }
+        if (end == start) {
+            return Double.NaN;
+        }
+        double multiplier;
+        switch (value.charAt(end - 1)) {
+            case 'K':
+                multiplier = 1e3;
+                break;
+            case 'M':
+                multiplier = 1e6;
+                break;
+            case 'B':
+                multiplier = 1e9;
+                break;
+            case 'T':
+                multiplier = 1e12;
+                break;
+            default:
+                return parseDecimal(value, start, end);
+        }
+        return parseDecimal(value, start, end - 1) * multiplier;
+    }
+
+    private static long parseDate(CharSequence value, int start, int end) {
+        int month = 0;
+        int day = 0;
+        int year = 0;
+        int part = 0;
+        int digits = 0;
+        for (int pos = start; pos < end; pos++) {
+            char c = value.charAt(pos);
+            if (c >= '0' && c <= '9') {
+                if (part == 0) {
+                    month = month * 10 + (c - '0');
+                } else if (part == 1) {
+                    day = day * 10 + (c - '0');
+                } else {
+                    year = year * 10 + (c - '0');
+                }
+                digits++;
+            } else if (c == '/' && digits > 0 && part < 2) {
+                part++;
+                digits = 0;
+            } else if (c != ' ') {
+                return NA_LONG;
+            }
+        }
+        if (part != 2 || digits == 0 || month < 1 || month > 12 || day < 1 || day > 31) {
+            return NA_LONG;
+        }
+        return epochDay(year, month, day) * MILLIS_PER_DAY;
+    }
+
+    /**
+     * Days since 1970-01-01 of a date in the proleptic Gregorian calendar.
+     */
+    static long epochDay(int year, int month, int day) {
+        long y = month <= 2 ? year - 1 : year;
+        long era = (y >= 0 ? y : y - 399) / 400;
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    private static long parseTime(CharSequence value, int start, int end) {
+        int hour = 0;
+        int minute = 0;
+        int digits = 0;
+        boolean inMinutes = false;
+        int pos = start;
+        for (; pos < end; pos++) {
+            char c = value.charAt(pos);
+            if (c >= '0' && c <= '9') {
+                if (inMinutes) {
+                    minute = minute * 10 + (c - '0');
+                } else {
+                    hour = hour * 10 + (c - '0');
+                }
+                digits++;
+            } else if (c == ':' && !inMinutes && digits > 0) {
+                inMinutes = true;
+                digits = 0;
+            } else if (c != ' ') {
+                break;
+            }
+        }
+        if (!inMinutes || digits == 0 || hour > 23 || minute > 59) {
+            return NA_LONG;
+        }
+        if (pos + 2 == end) {
+            char c = Character.toLowerCase(value.charAt(pos));
+            if (Character.toLowerCase(value.charAt(pos + 1)) != 'm' || hour < 1 || hour > 12) {
+                return NA_LONG;
+            }
+            if (c == 'a') {
+                hour = hour == 12 ? 0 : hour;
+            } else if (c == 'p') {
+                hour = hour == 12 ? 12 : hour + 12;
+            } else {
+                return NA_LONG;
+            }
+        } else if (pos != end) {
+            return NA_LONG;
+        }
+        return (hour * 60L + minute) * 60 * 1000;
+    }
+}